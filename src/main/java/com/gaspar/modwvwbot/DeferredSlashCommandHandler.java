@@ -0,0 +1,32 @@
+package com.gaspar.modwvwbot;
+
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Handler of slash commands that can take longer than what Discord waits for the answer (3 seconds), for
+ * example because they call the Gw2 API. These commands are acknowledged by the {@link SlashCommandDispatcher}
+ * as soon as they arrive, and then {@link #handleDeferredSlashCommand(SlashCommandInteractionEvent, InteractionHook)}
+ * is called instead of {@link #handleSlashCommand(SlashCommandInteractionEvent)}.
+ */
+public interface DeferredSlashCommandHandler extends SlashCommandHandler {
+
+    /**
+     * Process the command, after the reply was deferred.
+     * @param event Command event.
+     * @param hook Hook of the deferred reply, every answer must be sent with this.
+     * @return Future that completes when the final answer is sent.
+     */
+    CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook);
+
+    /**
+     * Defer the reply, and then process the command. The dispatcher does not call this, it defers the reply itself.
+     * @param event Command event.
+     */
+    @Override
+    default void handleSlashCommand(SlashCommandInteractionEvent event) {
+        event.deferReply().queue(hook -> handleDeferredSlashCommand(event, hook));
+    }
+}
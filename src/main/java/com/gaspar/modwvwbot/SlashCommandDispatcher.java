@@ -1,18 +1,26 @@
 package com.gaspar.modwvwbot;
 
 import com.gaspar.modwvwbot.config.SlashCommandConfig;
+import com.gaspar.modwvwbot.misc.EmoteUtils;
 import com.gaspar.modwvwbot.model.CommandUsageStatistic;
 import com.gaspar.modwvwbot.services.botapi.CommandUsageService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Gets all slash command events, and routes them to the different
- * services.
+ * services. The services are called on the {@link SlashCommandExecutor}, not on the JDA event thread.
+ * Commands of a {@link DeferredSlashCommandHandler} are deferred right away, before they are queued.
  */
 @Component
 @Slf4j
@@ -21,38 +29,78 @@ public class SlashCommandDispatcher extends ListenerAdapter {
 
     private final SlashCommandConfig.SlashCommandHandlers commandHandlers;
     private final CommandUsageService commandUsageService;
+    private final SlashCommandExecutor slashCommandExecutor;
+    private final SlashCommandMetrics slashCommandMetrics;
+
+    /**
+     * Command names (without the '/', as in {@link SlashCommandInteractionEvent#getName()}) and their handlers.
+     * Built once at startup.
+     */
+    private Map<String, SlashCommandHandler> routes;
+
+    /**
+     * Build the routing table from the handlers.
+     * @throws IllegalStateException If a command is handled by more than one handler.
+     */
+    @PostConstruct
+    public void buildRoutes() {
+        Map<String, SlashCommandHandler> routes = new HashMap<>();
+        for(var handler: commandHandlers.getHandlerList()) {
+            String[] handledCommands = handler.handlesMultipleCommands() ? handler.commandNames() : new String[] {handler.commandName()};
+            for(String handledCommand: handledCommands) {
+                String name = handledCommand.startsWith("/") ? handledCommand.substring(1) : handledCommand;
+                var previous = routes.putIfAbsent(name, handler);
+                if(previous != null) {
+                    throw new IllegalStateException("Command '" + handledCommand + "' is handled by both "
+                            + previous.getClass().getSimpleName() + " and " + handler.getClass().getSimpleName());
+                }
+            }
+        }
+        this.routes = Map.copyOf(routes);
+        log.info("Routing {} slash commands to {} handlers.", this.routes.size(), commandHandlers.getHandlerList().size());
+    }
 
     @Override
     public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
         log.debug("Slash command interaction arrived: {}", event.getCommandString());
-
-        String command = getCommandName(event);
-        log.debug("Saving command usage...");
-        if(event.getGuild() != null) {
-            commandUsageService.saveCommandUsage(event.getGuild().getIdLong(), command);
-        } else {
-            commandUsageService.saveCommandUsage(CommandUsageStatistic.PRIVATE_MESSAGE_SOURCE, command);
+        long guildId = event.getGuild() != null ? event.getGuild().getIdLong() : event.getUser().getIdLong();
+        var handler = routes.get(event.getName());
+        if(handler instanceof DeferredSlashCommandHandler) {
+            var deferredHandler = (DeferredSlashCommandHandler) handler;
+            //acknowledge first, so the queue and the lookups of the command don't count against the 3 seconds
+            CompletableFuture<InteractionHook> ack = event.deferReply().submit().whenComplete((hook, error) -> {
+                slashCommandMetrics.recordAck(event, error == null);
+                if(error != null) {
+                    log.warn("Failed to acknowledge slash command '{}'.", event.getCommandString(), error);
+                }
+            });
+            //already acknowledged, so it can wait in the queue as long as necessary
+            boolean queued = slashCommandExecutor.submit(guildId, () -> dispatchDeferred(event, deferredHandler));
+            if(!queued) {
+                log.warn("Slash command queue is full, command '{}' is rejected.", event.getCommandString());
+                //the deferred reply is replaced, once it exists
+                ack.thenAccept(hook -> hook.editOriginal(getBusyMessage()).queue());
+            }
+            return;
         }
+        boolean queued = slashCommandExecutor.submit(guildId, () -> dispatch(event), () -> replyBusy(event));
+        if(!queued) {
+            log.warn("Slash command queue is full, command '{}' is rejected.", event.getCommandString());
+            replyBusy(event);
+        }
+    }
 
+    /**
+     * Save the usage of the command and route it to its handler. Runs on a {@link SlashCommandExecutor} thread.
+     */
+    private void dispatch(SlashCommandInteractionEvent event) {
+        saveCommandUsage(event);
         log.debug("Dispatching command to appropriate service...");
         try {
-            for(var handler: commandHandlers.getHandlerList()) {
-                if(handler.handlesMultipleCommands()) {
-                    //this handler is responsible for multiple commands
-                    //is this command one of them?
-                    for(String handledCommand: handler.commandNames()) {
-                        if(handledCommand.equals(command)) {
-                            handler.handleSlashCommand(event);
-                            return;
-                        }
-                    }
-                } else {
-                    //handles only one command. is this that command?
-                    if(command.equals(handler.commandName())) {
-                        handler.handleSlashCommand(event);
-                        return;
-                    }
-                }
+            var handler = routes.get(event.getName());
+            if(handler != null) {
+                handler.handleSlashCommand(event);
+                return;
             }
             log.warn("Unknown command, unable to route to service: {}", event.getCommandString());
             event.reply("Ismeretlen parancs. Ez a bot hibája, kérlek jelezd a fejlesztő felé.").queue();
@@ -63,12 +111,43 @@ public class SlashCommandDispatcher extends ListenerAdapter {
     }
 
     /**
-     * Extract name of the command, such as '/wvw_items'.
-     * @param event The command event.
-     * @return Command name.
+     * Save the usage of a command, which is already deferred, and let its handler answer through the
+     * hook. Runs on a {@link SlashCommandExecutor} thread.
      */
-    private String getCommandName(SlashCommandInteractionEvent event) {
-        var parts = event.getCommandString().split(" ");
-        return parts[0];
+    private void dispatchDeferred(SlashCommandInteractionEvent event, DeferredSlashCommandHandler handler) {
+        saveCommandUsage(event);
+        log.debug("Dispatching deferred command to appropriate service...");
+        try {
+            handler.handleDeferredSlashCommand(event, event.getHook()).whenComplete((ignored, error) -> {
+                slashCommandMetrics.recordResponse(event, error == null);
+                if(error != null) {
+                    log.error("Failed to send the answer of slash command '{}'.", event.getCommandString(), error);
+                    //don't leave the deferred reply waiting
+                    event.getHook().editOriginal("Hiba történt. Kérlek ezt jelezd a készítőmnek.").queue();
+                }
+            });
+        } catch (Exception e) {
+            log.error("Other exception while processing slash command.", e);
+            event.getHook().editOriginal("Hiba történt. Kérlek ezt jelezd a készítőmnek.").queue();
+        }
+    }
+
+    private void saveCommandUsage(SlashCommandInteractionEvent event) {
+        String command = "/" + event.getName();
+        log.debug("Saving command usage...");
+        if(event.getGuild() != null) {
+            commandUsageService.saveCommandUsage(event.getGuild().getIdLong(), command);
+        } else {
+            commandUsageService.saveCommandUsage(CommandUsageStatistic.PRIVATE_MESSAGE_SOURCE, command);
+        }
+    }
+
+    private void replyBusy(SlashCommandInteractionEvent event) {
+        event.reply(getBusyMessage()).setEphemeral(true).queue();
+    }
+
+    private String getBusyMessage() {
+        String emote = EmoteUtils.defaultEmote("hourglass");
+        return "Most túl sok parancsot kapok " + emote + ". Kérlek próbáld újra pár másodperc múlva.";
     }
 }
@@ -0,0 +1,227 @@
+package com.gaspar.modwvwbot;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the slash command handlers, so database queries and blocking Gw2 API calls don't hold up the JDA event
+ * threads. Commands are queued per guild (private messages per user), and the worker threads take them from
+ * the guilds in turns. This way a guild that sends a lot of commands only delays its own commands, and not
+ * the commands of other guilds.
+ * <p>
+ * The queue is bounded, both in total and per guild. Commands that don't fit are rejected, and commands that
+ * waited too long in the queue are not started, because the interaction would expire during the command.
+ * The meters are:
+ * <ul>
+ *     <li>commands.queue.depth: commands waiting in the queue.</li>
+ *     <li>commands.queue.wait: time the commands spent in the queue.</li>
+ *     <li>commands.rejected: commands that were not run, tagged with the reason (FULL or EXPIRED).</li>
+ * </ul>
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class SlashCommandExecutor {
+
+    @Value("${com.gaspar.modwvwbot.slash_command_executor.threads}")
+    private int threads;
+
+    @Value("${com.gaspar.modwvwbot.slash_command_executor.queue_capacity}")
+    private int queueCapacity;
+
+    @Value("${com.gaspar.modwvwbot.slash_command_executor.guild_queue_capacity}")
+    private int guildQueueCapacity;
+
+    /**
+     * Commands that waited longer than this are not started. Discord requires an answer in 3 seconds.
+     */
+    @Value("${com.gaspar.modwvwbot.slash_command_executor.max_queue_wait_millis}")
+    private long maxQueueWaitMillis;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition commandsAvailable = lock.newCondition();
+
+    /**
+     * Queued commands of each guild. Guilds without queued commands are removed.
+     */
+    private final Map<Long, ArrayDeque<QueuedCommand>> guildQueues = new HashMap<>();
+
+    /**
+     * Guilds that have queued commands, in the order they are served.
+     */
+    private final ArrayDeque<Long> guildTurns = new ArrayDeque<>();
+
+    private int queuedCount;
+
+    private boolean shutdown;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private Timer queueWaitTimer;
+
+    @PostConstruct
+    public void start() {
+        queueWaitTimer = Timer.builder("commands.queue.wait")
+                .description("Time slash commands waited for a worker")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("commands.queue.depth", this, SlashCommandExecutor::getQueuedCount)
+                .description("Slash commands waiting for a worker")
+                .register(meterRegistry);
+        for(int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "command-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Slash commands are run on {} threads, at most {} can wait ({} per guild).", threads, queueCapacity, guildQueueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        lock.lock();
+        try {
+            shutdown = true;
+            commandsAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Queue a command, which is started no matter how long it waits. Only for commands that are already acknowledged.
+     * @param guildId Guild where the command was sent, or the user ID for private messages.
+     * @param command Runs the command.
+     * @return True if the command was queued, false if the queue is full.
+     */
+    public boolean submit(long guildId, Runnable command) {
+        return submit(guildId, command, null);
+    }
+
+    /**
+     * Queue a command.
+     * @param guildId Guild where the command was sent, or the user ID for private messages.
+     * @param command Runs the command.
+     * @param onRejected Runs on a worker thread if the command waited too long, and is not started. If null,
+     * the command is always started.
+     * @return True if the command was queued, false if the queue is full.
+     */
+    public boolean submit(long guildId, Runnable command, Runnable onRejected) {
+        lock.lock();
+        try {
+            var guildQueue = guildQueues.get(guildId);
+            if(shutdown || queuedCount >= queueCapacity || (guildQueue != null && guildQueue.size() >= guildQueueCapacity)) {
+                countRejected("FULL");
+                return false;
+            }
+            if(guildQueue == null) {
+                guildQueue = new ArrayDeque<>();
+                guildQueues.put(guildId, guildQueue);
+                guildTurns.addLast(guildId);
+            }
+            guildQueue.addLast(new QueuedCommand(command, onRejected, System.nanoTime()));
+            queuedCount++;
+            commandsAvailable.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queuedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        while(true) {
+            QueuedCommand command;
+            try {
+                command = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if(command == null) return;
+            Duration waited = Duration.ofNanos(System.nanoTime() - command.queuedAt);
+            queueWaitTimer.record(waited);
+            try {
+                if(command.onRejected != null && waited.toMillis() > maxQueueWaitMillis) {
+                    log.warn("Slash command waited {} ms in the queue, it's not started.", waited.toMillis());
+                    countRejected("EXPIRED");
+                    command.onRejected.run();
+                } else {
+                    command.command.run();
+                }
+            } catch (Exception e) {
+                log.error("Slash command failed on worker thread.", e);
+            }
+        }
+    }
+
+    /**
+     * Take the next command of the guild whose turn it is, waiting for one if necessary. The guild goes to the
+     * end of the line if it has more commands.
+     * @return The command, or null if the executor is shut down.
+     */
+    private QueuedCommand take() throws InterruptedException {
+        lock.lock();
+        try {
+            while(guildTurns.isEmpty() && !shutdown) {
+                commandsAvailable.await();
+            }
+            if(shutdown) return null;
+            long guildId = guildTurns.pollFirst();
+            var guildQueue = guildQueues.get(guildId);
+            var command = guildQueue.pollFirst();
+            if(guildQueue.isEmpty()) {
+                guildQueues.remove(guildId);
+            } else {
+                guildTurns.addLast(guildId);
+            }
+            queuedCount--;
+            return command;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void countRejected(String reason) {
+        Counter.builder("commands.rejected")
+                .description("Slash commands that were not run")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @RequiredArgsConstructor
+    private static class QueuedCommand {
+        private final Runnable command;
+        private final Runnable onRejected;
+        private final long queuedAt;
+    }
+}
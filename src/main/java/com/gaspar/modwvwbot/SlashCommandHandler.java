@@ -3,7 +3,9 @@ package com.gaspar.modwvwbot;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 /**
- * Interface for services that want to handle slash commands.
+ * Interface for services that want to handle slash commands. The commands are routed to the handlers by
+ * {@link SlashCommandDispatcher}, every command must have exactly one handler. Commands that may be slow
+ * should be handled by a {@link DeferredSlashCommandHandler}.
  */
 public interface SlashCommandHandler {
 
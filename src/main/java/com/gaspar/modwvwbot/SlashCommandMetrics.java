@@ -0,0 +1,70 @@
+package com.gaspar.modwvwbot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Latency of the slow slash commands, measured from when the interaction was created by Discord. Both timers are
+ * tagged with the command name, and have a bucket at 3 seconds, which is how long Discord waits for the
+ * acknowledgement:
+ * <ul>
+ *     <li>commands.ack: time until the reply was deferred, or deferring it failed. Tagged with the outcome,
+ *     'acknowledged' or 'failed'.</li>
+ *     <li>commands.response: time until the final answer was sent, or the command failed. Tagged with the outcome,
+ *     'answered' or 'failed'.</li>
+ * </ul>
+ * @see DeferredSlashCommandHandler
+ */
+@Component
+@RequiredArgsConstructor
+public class SlashCommandMetrics {
+
+    /**
+     * Discord fails interactions that are not acknowledged in this time.
+     */
+    private static final Duration ACK_WINDOW = Duration.ofSeconds(3);
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Record the acknowledgement of a command.
+     * @param acknowledged False if Discord did not accept the acknowledgement, for example because it was too late.
+     */
+    public void recordAck(SlashCommandInteractionEvent event, boolean acknowledged) {
+        timer("commands.ack", "Time until slash commands are acknowledged", event.getName())
+                .tag("outcome", acknowledged ? "acknowledged" : "failed")
+                .register(meterRegistry)
+                .record(sinceCreated(event));
+    }
+
+    /**
+     * Record the final answer of a command.
+     * @param answered False if the command failed, and only an error message could be sent.
+     */
+    public void recordResponse(SlashCommandInteractionEvent event, boolean answered) {
+        timer("commands.response", "Time until the final answer of slash commands", event.getName())
+                .tag("outcome", answered ? "answered" : "failed")
+                .register(meterRegistry)
+                .record(sinceCreated(event));
+    }
+
+    private Duration sinceCreated(SlashCommandInteractionEvent event) {
+        Duration elapsed = Duration.between(event.getTimeCreated().toInstant(), Instant.now());
+        //the clock of this machine may be a bit behind Discord's
+        return elapsed.isNegative() ? Duration.ZERO : elapsed;
+    }
+
+    private Timer.Builder timer(String name, String description, String command) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(ACK_WINDOW);
+    }
+}
@@ -1,7 +1,10 @@
 package com.gaspar.modwvwbot.config;
 
+import com.gaspar.modwvwbot.exception.Gw2ApiClientException;
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.services.gw2api.Gw2RateLimiter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpResponse;
@@ -17,8 +20,11 @@ import java.io.IOException;
  */
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2ApiErrorHandler implements ResponseErrorHandler {
 
+    private final Gw2RateLimiter gw2RateLimiter;
+
     @Override
     public boolean hasError(@NonNull ClientHttpResponse response) throws IOException {
         return response.getStatusCode().is4xxClientError() || response.getStatusCode().is5xxServerError();
@@ -29,6 +35,13 @@ public class Gw2ApiErrorHandler implements ResponseErrorHandler {
         if(response.getStatusCode() == HttpStatus.UNAUTHORIZED || response.getStatusCode() == HttpStatus.FORBIDDEN) {
             log.info("API key has no required permissions, GW2 API responded with {}.", response.getRawStatusCode());
             throw new UnauthorizedException("APi key does not have required permissions");
+        } else if(response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+            log.warn("Gw2 API responded with 429, the bot is sending too many requests.");
+            gw2RateLimiter.drain();
+            throw new Gw2ApiClientException("Gw2 API throttled the request, status: " + response.getRawStatusCode(), response.getRawStatusCode());
+        } else if(response.getStatusCode().is4xxClientError()) {
+            log.info("Gw2 API rejected the request, status text: {}, code: {}", response.getStatusText(), response.getRawStatusCode());
+            throw new Gw2ApiClientException("Gw2 API rejected the request, status: " + response.getRawStatusCode(), response.getRawStatusCode());
         } else {
             log.warn("Gw2 API failed to respond, status text: {}, code: {}", response.getStatusText(), response.getRawStatusCode());
             throw new Gw2ApiException("Gw2 API failed to answer, status: " + response.getRawStatusCode());
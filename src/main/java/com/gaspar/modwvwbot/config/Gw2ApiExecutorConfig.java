@@ -0,0 +1,36 @@
+package com.gaspar.modwvwbot.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Configures the thread pool that sends the asynchronous Gw2 API requests. These requests
+ * block while waiting for the API, so they must not run on the JDA threads.
+ */
+@Configuration
+@Slf4j
+public class Gw2ApiExecutorConfig {
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_executor.threads}")
+    private int threads;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_executor.queue_capacity}")
+    private int queueCapacity;
+
+    @Bean
+    @Qualifier("gw2apiExecutor")
+    public ThreadPoolTaskExecutor provideGw2ApiExecutor() {
+        log.info("Creating Gw2 API executor with {} threads.", threads);
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("gw2api-");
+        return executor;
+    }
+
+}
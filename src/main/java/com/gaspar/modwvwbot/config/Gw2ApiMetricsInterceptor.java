@@ -0,0 +1,151 @@
+package com.gaspar.modwvwbot.config;
+
+import com.gaspar.modwvwbot.services.gw2api.Gw2ApiMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+
+/**
+ * Measures the requests of the Gw2 API {@link org.springframework.web.client.RestTemplate}, see {@link Gw2ApiMetrics}.
+ * A request is recorded when its response is closed, so the latency and the size include reading the body.
+ */
+@Component
+@RequiredArgsConstructor
+public class Gw2ApiMetricsInterceptor implements ClientHttpRequestInterceptor {
+
+    private final Gw2ApiMetrics gw2ApiMetrics;
+
+    @Override
+    @NonNull
+    public ClientHttpResponse intercept(
+            @NonNull HttpRequest request,
+            @NonNull byte[] body,
+            @NonNull ClientHttpRequestExecution execution
+    ) throws IOException {
+        String endpointTag = gw2ApiMetrics.getCurrentEndpointTag();
+        long start = System.nanoTime();
+        try {
+            return new MeasuredResponse(execution.execute(request, body), endpointTag, start);
+        } catch (IOException e) {
+            //connect timeout, pool acquire timeout and read timeout are all interrupted IO
+            gw2ApiMetrics.recordFailure(endpointTag, e instanceof InterruptedIOException, Duration.ofNanos(System.nanoTime() - start));
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the bytes read from the body, and records the request when closed.
+     */
+    private class MeasuredResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final String endpointTag;
+        private final long start;
+
+        private CountingInputStream countingBody;
+        private boolean timedOut;
+        private boolean recorded;
+
+        MeasuredResponse(ClientHttpResponse response, String endpointTag, long start) {
+            this.response = response;
+            this.endpointTag = endpointTag;
+            this.start = start;
+        }
+
+        @Override
+        @NonNull
+        public InputStream getBody() throws IOException {
+            if(countingBody == null) {
+                countingBody = new CountingInputStream(response.getBody());
+            }
+            return countingBody;
+        }
+
+        @Override
+        public void close() {
+            if(!recorded) {
+                recorded = true;
+                Duration latency = Duration.ofNanos(System.nanoTime() - start);
+                if(timedOut) {
+                    gw2ApiMetrics.recordFailure(endpointTag, true, latency);
+                } else {
+                    Long bytes = countingBody == null ? null : countingBody.count;
+                    try {
+                        gw2ApiMetrics.recordResponse(endpointTag, response.getRawStatusCode(), latency, bytes);
+                    } catch (IOException e) {
+                        gw2ApiMetrics.recordFailure(endpointTag, false, latency);
+                    }
+                }
+            }
+            response.close();
+        }
+
+        @Override
+        @NonNull
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        @NonNull
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        @NonNull
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        private class CountingInputStream extends FilterInputStream {
+
+            private long count;
+
+            CountingInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                try {
+                    int b = super.read();
+                    if(b >= 0) count++;
+                    return b;
+                } catch (InterruptedIOException e) {
+                    timedOut = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public int read(@NonNull byte[] b, int off, int len) throws IOException {
+                try {
+                    int read = super.read(b, off, len);
+                    if(read > 0) count += read;
+                    return read;
+                } catch (InterruptedIOException e) {
+                    timedOut = true;
+                    throw e;
+                }
+            }
+        }
+    }
+}
@@ -1,34 +1,112 @@
 package com.gaspar.modwvwbot.config;
 
+import com.gaspar.modwvwbot.services.gw2api.Gw2RequestAborter;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Duration;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configures rest templates used by the bot. There is one for every API used.
  */
 @Configuration
 @RequiredArgsConstructor
+@Slf4j
 public class RestTemplateConfig {
 
     @Value("${com.gaspar.modwvwbot.gw2_api_url}")
     private String gw2ApiBaseUrl;
 
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.max_connections}")
+    private int maxConnections;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.max_connections_per_route}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.connect_timeout_millis}")
+    private int connectTimeoutMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.read_timeout_millis}")
+    private int readTimeoutMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.pool_acquire_timeout_millis}")
+    private int poolAcquireTimeoutMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_http.keep_alive_seconds}")
+    private long keepAliveSeconds;
+
     private final Gw2ApiErrorHandler gw2ApiErrorHandler;
+    private final Gw2ApiMetricsInterceptor gw2ApiMetricsInterceptor;
+    private final Gw2RequestAborter gw2RequestAborter;
 
     @Bean
     @Qualifier("gw2api")
     public RestTemplate provideGw2ApiRestTemplate() {
         return new RestTemplateBuilder()
+                .requestFactory(this::createGw2ApiRequestFactory)
                 .errorHandler(gw2ApiErrorHandler)
+                .additionalInterceptors(gw2ApiMetricsInterceptor)
                 .rootUri(gw2ApiBaseUrl)
                 .build();
     }
 
+    /**
+     * Creates a request factory with a connection pool, so that requests to the Gw2 API reuse
+     * open (TLS) connections instead of doing a new handshake every time. Responses are requested
+     * with gzip compression, which is decompressed transparently. The requests are registered in the
+     * {@link Gw2RequestAborter}, so they can be aborted when their deadline passes.
+     */
+    private ClientHttpRequestFactory createGw2ApiRequestFactory() {
+        log.info("Creating Gw2 API HTTP client with a pool of {} connections ({} per route).", maxConnections, maxConnectionsPerRoute);
+        var connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        var requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .setConnectionRequestTimeout(poolAcquireTimeoutMillis)
+                .setContentCompressionEnabled(true) //sends Accept-Encoding: gzip
+                .build();
+
+        long keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAliveSeconds);
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                //keep connections alive as long as the server allows, but not longer than configured
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+                })
+                .evictIdleConnections(keepAliveSeconds, TimeUnit.SECONDS)
+                .evictExpiredConnections()
+                //no client certificates are used, so any pooled TLS connection can serve any request
+                .disableConnectionState()
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient) {
+            @Override
+            protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+                HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+                gw2RequestAborter.register(request);
+                return request;
+            }
+        };
+    }
+
 }
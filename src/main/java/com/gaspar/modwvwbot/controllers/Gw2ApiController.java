@@ -0,0 +1,74 @@
+package com.gaspar.modwvwbot.controllers;
+
+import com.gaspar.modwvwbot.controllers.dto.Gw2CacheStatisticsResponse;
+import com.gaspar.modwvwbot.controllers.dto.Gw2CircuitBreakerResponse;
+import com.gaspar.modwvwbot.controllers.dto.Gw2RateLimitResponse;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.services.AuthorizationService;
+import com.gaspar.modwvwbot.services.gw2api.Gw2ApiGateway;
+import com.gaspar.modwvwbot.services.gw2api.Gw2CircuitBreaker;
+import com.gaspar.modwvwbot.services.gw2api.Gw2RateLimiter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Provides information about how the bot uses the Gw2 API.
+ */
+@RestController
+@RequestMapping("/api/gw2")
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2ApiController {
+
+    private final AuthorizationService authorizationService;
+    private final Gw2ApiGateway gw2ApiGateway;
+    private final Gw2RateLimiter gw2RateLimiter;
+    private final Gw2CircuitBreaker gw2CircuitBreaker;
+
+    /**
+     * Get the statistics of the Gw2 API response caches.
+     * @param token Security token.
+     * @see Gw2CacheStatisticsResponse
+     */
+    @GetMapping("/cache")
+    public Gw2CacheStatisticsResponse getCacheStatistics(@RequestParam String token) {
+        log.info("'GET Gw2 API cache statistics' request was received.");
+        if(authorizationService.isUnauthorizedToCallApi(token)) {
+            throw new UnauthorizedException("Invalid security token!");
+        }
+        return gw2ApiGateway.getCacheStatistics();
+    }
+
+    /**
+     * Get the state of the Gw2 API circuit breakers.
+     * @param token Security token.
+     * @see Gw2CircuitBreakerResponse
+     */
+    @GetMapping("/circuits")
+    public Gw2CircuitBreakerResponse getCircuitStates(@RequestParam String token) {
+        log.info("'GET Gw2 API circuit states' request was received.");
+        if(authorizationService.isUnauthorizedToCallApi(token)) {
+            throw new UnauthorizedException("Invalid security token!");
+        }
+        return gw2CircuitBreaker.getCircuitStates();
+    }
+
+    /**
+     * Get the current budget usage of the Gw2 API rate limiter.
+     * @param token Security token.
+     * @see Gw2RateLimitResponse
+     */
+    @GetMapping("/rate_limit")
+    public Gw2RateLimitResponse getRateLimitUsage(@RequestParam String token) {
+        log.info("'GET Gw2 API rate limit usage' request was received.");
+        if(authorizationService.isUnauthorizedToCallApi(token)) {
+            throw new UnauthorizedException("Invalid security token!");
+        }
+        return gw2RateLimiter.getUsage();
+    }
+
+}
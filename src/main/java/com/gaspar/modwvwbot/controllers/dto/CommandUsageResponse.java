@@ -11,8 +11,4 @@ public class CommandUsageResponse {
 
     private int count;
 
-    public void increaseWith(int count) {
-        this.count += count;
-    }
-
 }
@@ -0,0 +1,44 @@
+package com.gaspar.modwvwbot.controllers.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Response body of the Gw2 API cache statistics endpoint.
+ * @see com.gaspar.modwvwbot.controllers.Gw2ApiController
+ */
+@Data
+public class Gw2CacheStatisticsResponse {
+
+    private List<EndpointCacheStatistic> caches;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class EndpointCacheStatistic {
+
+        /**
+         * Logical Gw2 API endpoint, such as 'WVW_RANKS'.
+         */
+        private String endpoint;
+
+        private long timeToLiveSeconds;
+
+        /**
+         * Approximate amount of cached responses.
+         */
+        private long size;
+
+        private long hitCount;
+
+        private long missCount;
+
+        private double hitRate;
+
+        private long evictionCount;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.gaspar.modwvwbot.controllers.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Response body of the Gw2 API circuit breaker endpoint.
+ * @see com.gaspar.modwvwbot.controllers.Gw2ApiController
+ */
+@Data
+public class Gw2CircuitBreakerResponse {
+
+    private List<CircuitStatus> circuits;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class CircuitStatus {
+
+        /**
+         * Endpoint family, such as 'ACCOUNT'.
+         */
+        private String family;
+
+        /**
+         * CLOSED, OPEN or HALF_OPEN.
+         */
+        private String state;
+
+        /**
+         * Number of calls in the window.
+         */
+        private int recordedCalls;
+
+        private double failureRate;
+
+        private double slowCallRate;
+
+        /**
+         * Seconds until an open circuit lets a probe through. 0 if not open.
+         */
+        private long retryAfterSeconds;
+
+    }
+}
@@ -0,0 +1,50 @@
+package com.gaspar.modwvwbot.controllers.dto;
+
+import lombok.Data;
+
+/**
+ * Response body of the Gw2 API rate limit endpoint: the current budget usage of the rate limiter.
+ * @see com.gaspar.modwvwbot.controllers.Gw2ApiController
+ */
+@Data
+public class Gw2RateLimitResponse {
+
+    private double requestsPerSecond;
+
+    private int burst;
+
+    /**
+     * Tokens that background requests can't take.
+     */
+    private int backgroundReserve;
+
+    /**
+     * Tokens currently in the bucket. Negative after the Gw2 API throttled the bot.
+     */
+    private double availableTokens;
+
+    private int interactiveWaiting;
+
+    private int backgroundWaiting;
+
+    /**
+     * Requests that got a token since startup.
+     */
+    private long grantedCount;
+
+    /**
+     * Requests that got a token, but had to wait for it.
+     */
+    private long delayedCount;
+
+    /**
+     * Requests that got no token in time and failed.
+     */
+    private long rejectedCount;
+
+    /**
+     * How many times the Gw2 API responded with 429.
+     */
+    private long throttledCount;
+
+}
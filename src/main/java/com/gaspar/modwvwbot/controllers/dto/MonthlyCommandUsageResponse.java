@@ -15,8 +15,4 @@ public class MonthlyCommandUsageResponse {
 
     private int count;
 
-    public void increaseWith(int count) {
-        this.count += count;
-    }
-
 }
@@ -0,0 +1,19 @@
+package com.gaspar.modwvwbot.exception;
+
+import lombok.Getter;
+
+/**
+ * Thrown when the Gw2 API answered with a client error, such as 404 for an unknown ID or 429 when
+ * the bot was throttled. The API is working, so these don't count as failures in the circuit breaker.
+ * @see UnauthorizedException
+ */
+@Getter
+public class Gw2ApiClientException extends Gw2ApiException {
+
+    private final int status;
+
+    public Gw2ApiClientException(String message, int status) {
+        super(message);
+        this.status = status;
+    }
+}
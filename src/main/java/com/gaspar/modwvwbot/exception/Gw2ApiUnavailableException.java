@@ -0,0 +1,27 @@
+package com.gaspar.modwvwbot.exception;
+
+import com.gaspar.modwvwbot.model.gw2api.Gw2EndpointFamily;
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown without calling the Gw2 API, when the circuit breaker of the endpoint family is open.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2CircuitBreaker
+ */
+@Getter
+public class Gw2ApiUnavailableException extends Gw2ApiException {
+
+    private final Gw2EndpointFamily family;
+
+    /**
+     * Time until the circuit breaker lets a probe request through.
+     */
+    private final Duration retryAfter;
+
+    public Gw2ApiUnavailableException(Gw2EndpointFamily family, Duration retryAfter) {
+        super("Gw2 API endpoints of family " + family + " are unavailable, retry after " + retryAfter.toSeconds() + " seconds.");
+        this.family = family;
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,12 @@
+package com.gaspar.modwvwbot.exception;
+
+/**
+ * Thrown when a Gw2 API call could not be finished before the deadline of the command that made it.
+ * @see com.gaspar.modwvwbot.misc.Deadline
+ */
+public class Gw2DeadlineExceededException extends Gw2ApiException {
+
+    public Gw2DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,68 @@
+package com.gaspar.modwvwbot.misc;
+
+import com.gaspar.modwvwbot.model.Amount;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts items or currencies of interest in a primitive array, using the slots of an {@link AmountIndex}.
+ * Not thread safe: counters that are updated from different threads must be synchronized on.
+ */
+public class AmountCounter {
+
+    private final AmountIndex index;
+
+    private final int[] counts;
+
+    AmountCounter(AmountIndex index) {
+        this.index = index;
+        this.counts = new int[index.size()];
+    }
+
+    /**
+     * Add to the amount of an item or currency, if it is one of interest.
+     * @param id ID of the item or currency.
+     * @param count How many were found.
+     * @return True if this was an item or currency of interest.
+     */
+    public boolean add(int id, int count) {
+        int slot = index.slotOf(id);
+        if(slot < 0) return false;
+        counts[slot] += count;
+        return true;
+    }
+
+    /**
+     * Add all amounts of another counter to this one.
+     * @param other Counter made from the same index.
+     */
+    public void addAll(AmountCounter other) {
+        if(other.index != index) throw new IllegalArgumentException("Counters are made from different indexes.");
+        for(int slot = 0; slot < counts.length; slot++) {
+            counts[slot] += other.counts[slot];
+        }
+    }
+
+    /**
+     * Get the amount of the item or currency in the given slot.
+     */
+    public int getCount(int slot) {
+        return counts[slot];
+    }
+
+    public AmountIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Create the amounts, in the order of the items or currencies of the index.
+     */
+    public List<Amount> toAmounts() {
+        List<Amount> amounts = new ArrayList<>(counts.length);
+        for(int slot = 0; slot < counts.length; slot++) {
+            amounts.add(new Amount(index.getItemOrCurrency(slot), counts[slot]));
+        }
+        return amounts;
+    }
+}
@@ -0,0 +1,102 @@
+package com.gaspar.modwvwbot.misc;
+
+import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the IDs of items or currencies of interest to slots 0..size-1, so they can be counted
+ * in a primitive array. Uses open addressing with linear probing over int arrays, so looking up an
+ * ID does not allocate or box. Built once from the configured items and then only read, so it can be
+ * shared between threads.
+ * @see AmountCounter
+ */
+public class AmountIndex {
+
+    private static final int EMPTY = -1;
+
+    private final List<WvwItemOrCurrency> itemsOrCurrencies;
+
+    /**
+     * IDs in the hash table, {@link #EMPTY} where there is no ID.
+     */
+    private final int[] keys;
+
+    /**
+     * Slot of the ID that is at the same position in {@link #keys}.
+     */
+    private final int[] slots;
+
+    /**
+     * Always a power of 2 minus 1.
+     */
+    private final int mask;
+
+    /**
+     * Build the index.
+     * @param itemsOrCurrencies Items or currencies of interest, the slots follow their order.
+     * @throws IllegalArgumentException If an ID is negative or appears twice.
+     */
+    public AmountIndex(List<WvwItemOrCurrency> itemsOrCurrencies) {
+        this.itemsOrCurrencies = List.copyOf(itemsOrCurrencies);
+        //at most half full, so probes stay short
+        int capacity = Integer.highestOneBit(Math.max(2, itemsOrCurrencies.size()) * 2) * 2;
+        keys = new int[capacity];
+        slots = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+        for(int slot = 0; slot < this.itemsOrCurrencies.size(); slot++) {
+            int id = this.itemsOrCurrencies.get(slot).getId();
+            if(id < 0) throw new IllegalArgumentException("Invalid item or currency ID: " + id);
+            int position = hash(id) & mask;
+            while(keys[position] != EMPTY) {
+                if(keys[position] == id) throw new IllegalArgumentException("Duplicate item or currency ID: " + id);
+                position = (position + 1) & mask;
+            }
+            keys[position] = id;
+            slots[position] = slot;
+        }
+    }
+
+    /**
+     * Find the slot of an item or currency.
+     * @param id ID of the item or currency.
+     * @return The slot, or -1 if this is not an item or currency of interest.
+     */
+    public int slotOf(int id) {
+        int position = hash(id) & mask;
+        int key;
+        while((key = keys[position]) != EMPTY) {
+            if(key == id) return slots[position];
+            position = (position + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * How many items or currencies are indexed.
+     */
+    public int size() {
+        return itemsOrCurrencies.size();
+    }
+
+    public WvwItemOrCurrency getItemOrCurrency(int slot) {
+        return itemsOrCurrencies.get(slot);
+    }
+
+    /**
+     * Create a counter where all items or currencies of this index have 0 amount.
+     */
+    public AmountCounter newCounter() {
+        return new AmountCounter(this);
+    }
+
+    /**
+     * Gw2 IDs are mostly sequential, so they are mixed before masking.
+     */
+    private static int hash(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
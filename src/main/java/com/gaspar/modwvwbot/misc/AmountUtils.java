@@ -1,11 +1,13 @@
 package com.gaspar.modwvwbot.misc;
 
-import com.gaspar.modwvwbot.model.Amount;
-import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
 import com.gaspar.modwvwbot.model.gw2api.*;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Methods that count and summarize items in
@@ -13,104 +15,158 @@ import java.util.stream.Collectors;
  */
 public abstract class AmountUtils {
 
-    /**
-     * Create a list of amounts with 0 count (each item or currency has 0 amount).
-     * @param itemsOrCurrencies Items or currencies.
-     * @return 0 amount list.
-     */
-    public static List<Amount> emptyAmounts(List<WvwItemOrCurrency> itemsOrCurrencies) {
-        return itemsOrCurrencies.stream()
-                .map(ioc -> new Amount(ioc, 0))
-                .collect(Collectors.toList());
-    }
-
-    /*
-    /**
-     * Add some new item or currency amounts to an existing list of them.
-     * @param amounts Original amounts that are to be increased.
-     * @param newAmounts New amounts that are to be added to {@code amounts}. If this has some items that
-     *                   are not in the original list, those will be lost.
-    public static void summarize(List<Amount> amounts, List<Amount> newAmounts) {
-        if(newAmounts.isEmpty()) return;
-        for(Amount newAmount: newAmounts) {
-            for(Amount amount: amounts) {
-                if(amount.sameItem(newAmount)) {
-                    amount.increaseAmountBy(newAmount.getAmount());
-                    break;
-                }
-            }
-        }
-    }
-    */
-
     /**
      * Count items in an inventory.
-     * @param amounts Amount list that stores how many items there are.
+     * @param counter Stores how many items there are.
      * @param inventory The inventory contents.
      */
-    public static void countInInventory(List<Amount> amounts, InventoryResponse inventory) {
+    public static void countInInventory(AmountCounter counter, InventoryResponse inventory) {
         for(BagResponse bag: inventory.getBags()) {
             if(bag == null) { //happens when that character has nothing equipped in that bag slot
                 continue;
             }
-            countItemList(amounts, bag.getItems());
+            countItemList(counter, bag.getItems());
         }
     }
 
     /**
      * Count items of interest in a list of items.
-     * @param amounts Amount of items. This list will be modified.
+     * @param counter Amount of items. This counter will be modified.
      * @param items All items found. Searched for items of interest.
      */
-    public static void countItemList(List<Amount> amounts, List<ItemResponse> items) {
+    public static void countItemList(AmountCounter counter, List<ItemResponse> items) {
         for(ItemResponse item: items) {
             //null item means there is nothing in that inventory slot
             if(item == null) continue;
-            //is this item one of the items of interest?
-            for(var amount: amounts) {
-                if(item.getId() == amount.getItemOrCurrency().getId()) {
-                    amount.increaseAmountBy(item.getAmount());
-                    break;
-                }
-            }
+            counter.add(item.getId().intValue(), item.getAmount());
         }
     }
 
     /**
      * Count items of interest in an array of items.
-     * @param amounts Amount of items. This list will be modified.
+     * @param counter Amount of items. This counter will be modified.
      * @param items All items found. Searched for items of interest.
      */
-    public static void countItemArray(List<Amount> amounts, ItemResponse[] items) {
+    public static void countItemArray(AmountCounter counter, ItemResponse[] items) {
         for(ItemResponse item: items) {
             //null item means there is nothing in that inventory slot
             if(item == null) continue;
-            //is this item one of the items of interest?
-            for(var amount: amounts) {
-                if(item.getId() == amount.getItemOrCurrency().getId()) {
-                    amount.increaseAmountBy(item.getAmount());
-                    break;
+            counter.add(item.getId().intValue(), item.getAmount());
+        }
+    }
+
+    /**
+     * Count items or currencies of interest in a JSON array, read as a token stream. Only the ID and the
+     * amount of each element are read, everything else is skipped without creating objects. Used for
+     * large responses, like the bank and material storage.
+     * @param counter Amount of items or currencies. This counter will be modified.
+     * @param parser Parser positioned before the array. Null elements (empty slots) are skipped.
+     * @param amountField Name of the amount field: 'count' for items, 'value' for currencies.
+     * @return How many elements were items or currencies of interest.
+     * @throws IOException If the JSON is not an array of objects.
+     */
+    public static int countJsonStream(AmountCounter counter, JsonParser parser, String amountField) throws IOException {
+        if(parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of items or currencies.");
+        }
+        return countJsonArray(counter, parser, amountField);
+    }
+
+    /**
+     * Count items of interest in the bags of every character, reading the response of /characters?ids=all
+     * as a token stream. Only the bags are read, the rest of the character (equipment, skills, etc.) is skipped.
+     * @param counter Amount of items. This counter will be modified.
+     * @param parser Parser positioned before the array of characters.
+     * @return How many characters were counted.
+     * @throws IOException If the JSON is not an array of characters.
+     * @throws UnauthorizedException If the characters have no bags, because the API key has no inventories permission.
+     */
+    public static int countCharactersJsonStream(AmountCounter counter, JsonParser parser) throws IOException, UnauthorizedException {
+        if(parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of characters.");
+        }
+        int characters = 0;
+        JsonToken token;
+        while((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if(token == null) throw new JsonParseException(parser, "Unexpected end of characters.");
+            if(token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            boolean hasBags = false;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if(parser.nextToken() == JsonToken.START_ARRAY && "bags".equals(field)) {
+                    countBagsJsonArray(counter, parser);
+                    hasBags = true;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if(!hasBags) throw new UnauthorizedException("Characters have no bags, API key has no inventories permission.");
+            characters++;
+        }
+        return characters;
+    }
+
+    /**
+     * Count items of interest in the bags of a character.
+     * @param parser Parser positioned on the start of the bags array.
+     */
+    private static void countBagsJsonArray(AmountCounter counter, JsonParser parser) throws IOException {
+        JsonToken token;
+        while((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if(token == null) throw new JsonParseException(parser, "Unexpected end of bags.");
+            //happens when that character has nothing equipped in that bag slot
+            if(token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                if(parser.nextToken() == JsonToken.START_ARRAY && "inventory".equals(field)) {
+                    countJsonArray(counter, parser, "count");
+                } else {
+                    parser.skipChildren();
                 }
             }
         }
     }
 
     /**
-     * Count currencies of interest in an array of currencies.
-     * @param amounts Amount of currencies. This list will be modified.
-     * @param currencies All currencies found. Searched for currencies of interest.
+     * Count items or currencies of interest in a JSON array.
+     * @param parser Parser positioned on the start of the array.
+     * @return How many elements were items or currencies of interest.
      */
-    public static void countCurrencyArray(List<Amount> amounts, CurrencyResponse[] currencies) {
-        for(CurrencyResponse currency: currencies) {
-            if(currency == null) continue;
-            //is this a currency of interest?
-            for(var amount: amounts) {
-                if(currency.getId() == amount.getItemOrCurrency().getId()) {
-                    amount.increaseAmountBy(currency.getAmount());
-                    break;
+    private static int countJsonArray(AmountCounter counter, JsonParser parser, String amountField) throws IOException {
+        int matches = 0;
+        JsonToken token;
+        while((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if(token == null) throw new JsonParseException(parser, "Unexpected end of items or currencies.");
+            //null element means there is nothing in that slot
+            if(token == JsonToken.VALUE_NULL) continue;
+            if(token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            int id = -1;
+            int count = 0;
+            while(parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if("id".equals(field)) {
+                    id = parser.getIntValue();
+                } else if(amountField.equals(field)) {
+                    count = parser.getIntValue();
+                } else {
+                    //binding, upgrades, etc...
+                    parser.skipChildren();
                 }
             }
+            //is this one of the items or currencies of interest?
+            if(counter.add(id, count)) matches++;
         }
+        return matches;
     }
 
 }
@@ -0,0 +1,55 @@
+package com.gaspar.modwvwbot.misc;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Point in time until a command must finish all of its work. Created when the command arrives, and passed
+ * to every Gw2 API call the command makes, so that nothing is started (or waited for) after it passed.
+ * Immutable.
+ */
+public class Deadline {
+
+    /**
+     * Deadline that never passes, for work that has no time limit (for example scheduled jobs).
+     */
+    public static final Deadline NONE = new Deadline(Instant.MAX);
+
+    /**
+     * Remaining time of {@link #NONE}. Not longer, so it can still be converted to nanoseconds.
+     */
+    private static final Duration NO_LIMIT = Duration.ofDays(365);
+
+    private final Instant expiresAt;
+
+    private Deadline(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Create a deadline.
+     * @param start When the work started, for commands this is when the interaction was created.
+     * @param budget How much time the work has.
+     */
+    public static Deadline after(Instant start, Duration budget) {
+        return new Deadline(start.plus(budget));
+    }
+
+    /**
+     * Time left until the deadline, zero if it already passed. For {@link #NONE}, this is a very long time.
+     */
+    public Duration remaining() {
+        if(this == NONE) return NO_LIMIT;
+        Duration remaining = Duration.between(Instant.now(), expiresAt);
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public boolean isExpired() {
+        return remaining().isZero();
+    }
+
+    @Override
+    public String toString() {
+        return this == NONE ? "Deadline(none)" : "Deadline(" + expiresAt + ")";
+    }
+}
@@ -0,0 +1,79 @@
+package com.gaspar.modwvwbot.misc;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Methods to work with the {@link CompletableFuture}s returned by the asynchronous Gw2 API calls.
+ */
+public abstract class FutureUtils {
+
+    /**
+     * Get the exception that actually caused a future to fail. Futures wrap the original
+     * exception into {@link CompletionException}s as it passes through the stages.
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        while((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Wait for a future, and throw the exception it failed with, as if it was thrown by the caller.
+     * Checked exceptions are wrapped into {@link Gw2ApiException}.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            Throwable cause = unwrap(e);
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new Gw2ApiException(cause);
+        }
+    }
+
+    /**
+     * Fail a future when the deadline passes, if it's not complete by then. Its dependent stages are not run, and
+     * if it was created with {@link CompletableFuture#supplyAsync} and is still queued, its work is not started.
+     * Only for futures that are not shared with others, see {@link #withDeadline(CompletableFuture, Deadline, String)}.
+     * @param work Description of the work, for the exception message.
+     * @return The same future, which fails with {@link Gw2DeadlineExceededException} if it did not complete in time.
+     */
+    public static <T> CompletableFuture<T> failAtDeadline(CompletableFuture<T> future, Deadline deadline, String work) {
+        if(deadline == Deadline.NONE) return future;
+        CompletableFuture.delayedExecutor(deadline.remaining().toMillis(), TimeUnit.MILLISECONDS).execute(() ->
+                future.completeExceptionally(new Gw2DeadlineExceededException(work + " did not finish before the deadline.")));
+        return future;
+    }
+
+    /**
+     * Stop waiting for a future when the deadline passes. The original future is not modified, so it can be
+     * shared with others, but the work behind it is not stopped either.
+     * @param work Description of the work, for the exception message.
+     * @return Future that fails with {@link Gw2DeadlineExceededException} if the original did not complete in time.
+     */
+    public static <T> CompletableFuture<T> withDeadline(CompletableFuture<T> future, Deadline deadline, String work) {
+        if(deadline == Deadline.NONE) return future;
+        return future.copy()
+                .orTimeout(deadline.remaining().toMillis(), TimeUnit.MILLISECONDS)
+                .handle((result, error) -> {
+                    if(error == null) return result;
+                    Throwable cause = unwrap(error);
+                    if(cause instanceof TimeoutException) {
+                        throw new CompletionException(new Gw2DeadlineExceededException(work + " did not finish before the deadline."));
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+}
@@ -1,11 +1,11 @@
 package com.gaspar.modwvwbot.misc;
 
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.model.matchup.MatchupResult;
 import com.gaspar.modwvwbot.model.matchup.WvwColor;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupReport;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupSide;
-import com.gaspar.modwvwbot.services.gw2api.Gw2WvwService;
-import lombok.RequiredArgsConstructor;
+import com.gaspar.modwvwbot.model.matchup.WvwSnapshot;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
@@ -20,7 +20,6 @@ import java.util.List;
  * Wvw matchup utilities.
  */
 @Component
-@RequiredArgsConstructor
 public class MatchupUtils {
 
     /**
@@ -39,8 +38,6 @@ public class MatchupUtils {
     @Value("${com.gaspar.modwvwbot.reset_time_winter}")
     private int resetHourWinter;
 
-    private final Gw2WvwService gw2WvwService;
-
     /**
      * Predicts if the home world will advance, stay or drop down a tier after this matchup
      * is finished. This prediction will only be accurate if the ranking by the victory points don't change
@@ -69,127 +66,107 @@ public class MatchupUtils {
      *                      although it's color may change.
      * @param homeCurrentPlacement Current placement of home world, for example 1 if home world is leading
      *                             current matchup.
-     * @return List of sides who will participate in the next matchup of the home world. Warning, don't use the
-     * statistics of these sides, only use world names and colors.
+     * @param snapshot Current state of all matchups.
+     * @return List of sides who will participate in the next matchup of the home world, starting with the
+     * home world's side. Warning, don't use the statistics of these sides, only use world names and colors.
+     * @throws Gw2ApiException If a needed tier is missing from the snapshot.
      * @see WvwMatchupSide
      */
     public List<WvwMatchupSide> getPredictedSides(
             int predictedTier,
             MatchupResult homeWorldResult,
             WvwMatchupSide homeWorldSide,
-            int homeCurrentPlacement
-    ) {
+            int homeCurrentPlacement,
+            WvwSnapshot snapshot
+    ) throws Gw2ApiException {
+        //the sides are shared by every guild, so their colors are changed on copies
         List<WvwMatchupSide> sides = new ArrayList<>();
-        //add home world side (color to be decided)
-        sides.add(homeWorldSide);
+        WvwColor homeColor = homeWorldSide.getColor();
         //predict other participants
         switch (homeWorldResult) {
             case ADVANCES:
                 //the home world advances to then next tier
                 //need to find out who stays in the predicted tier and who drops down here
+                WvwMatchupReport advancedTierReport = getTierReport(snapshot, predictedTier);
                 if(predictedTier == 1) {
                     //predicted tier is top tier, no one will drop down here (home world advances + 2 side stays)
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    var first = predictedTierReport.getFirstPlace();
-                    first.setColor(WvwColor.green);
-                    var second = predictedTierReport.getSecondPlace();
-                    second.setColor(WvwColor.blue);
-                    sides.add(first);
-                    sides.add(second);
+                    sides.add(advancedTierReport.getFirstPlace().withColor(WvwColor.green));
+                    sides.add(advancedTierReport.getSecondPlace().withColor(WvwColor.blue));
                 } else {
                     //predicted tier is not top, besides the home world, one side drops down here, and one will stay
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    var stays = predictedTierReport.getSecondPlace();
-                    stays.setColor(WvwColor.blue);
-                    sides.add(stays);
-                    WvwMatchupReport abovePredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier-1));
-                    var dropsDown = abovePredictedTierReport.getThirdPlace();
-                    dropsDown.setColor(WvwColor.green);
-                    sides.add(dropsDown);
+                    sides.add(advancedTierReport.getSecondPlace().withColor(WvwColor.blue));
+                    WvwMatchupReport abovePredictedTierReport = getTierReport(snapshot, predictedTier-1);
+                    sides.add(abovePredictedTierReport.getThirdPlace().withColor(WvwColor.green));
                 }
-                homeWorldSide.setColor(WvwColor.red);
+                homeColor = WvwColor.red;
                 break;
             case DROPS_DOWN:
                 //the home world drops down to the tier below
                 //need to find out who advances to this tier and who stays in this tier
+                WvwMatchupReport droppedTierReport = getTierReport(snapshot, predictedTier);
                 if(predictedTier == EW_TIER_COUNT) {
                     //predicted tier is lowest, nobody advances here, instead 1 drops down (home) and 2 stays
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    var second = predictedTierReport.getSecondPlace();
-                    second.setColor(WvwColor.blue);
-                    var third = predictedTierReport.getThirdPlace();
-                    third.setColor(WvwColor.red);
-                    sides.add(second);
-                    sides.add(third);
+                    sides.add(droppedTierReport.getSecondPlace().withColor(WvwColor.blue));
+                    sides.add(droppedTierReport.getThirdPlace().withColor(WvwColor.red));
                 } else {
                     //1 stays in predicted tier and 1 advances from tier below
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    var stays = predictedTierReport.getSecondPlace();
-                    stays.setColor(WvwColor.blue);
-                    sides.add(stays);
-                    WvwMatchupReport belowPredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier+1));
-                    var advances = belowPredictedTierReport.getFirstPlace();
-                    advances.setColor(WvwColor.red);
-                    sides.add(advances);
+                    sides.add(droppedTierReport.getSecondPlace().withColor(WvwColor.blue));
+                    WvwMatchupReport belowPredictedTierReport = getTierReport(snapshot, predictedTier+1);
+                    sides.add(belowPredictedTierReport.getFirstPlace().withColor(WvwColor.red));
                 }
-                homeWorldSide.setColor(WvwColor.green);
+                homeColor = WvwColor.green;
                 break;
             case STAYS:
                 //the home world stays in current tier
                 //find out who advances here, and who drops down
                 if(predictedTier == 1) {
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    WvwMatchupReport belowPredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier+1));
-                    var advances = belowPredictedTierReport.getFirstPlace();
-                    advances.setColor(WvwColor.red);
-                    sides.add(advances);
+                    WvwMatchupReport predictedTierReport = getTierReport(snapshot, predictedTier);
+                    WvwMatchupReport belowPredictedTierReport = getTierReport(snapshot, predictedTier+1);
+                    sides.add(belowPredictedTierReport.getFirstPlace().withColor(WvwColor.red));
                     //home stays in tier 1, but is it second or first?
                     if(homeCurrentPlacement == 2) {
-                        var stays = predictedTierReport.getFirstPlace();
-                        stays.setColor(WvwColor.green);
-                        sides.add(stays);
-                        homeWorldSide.setColor(WvwColor.blue);
+                        sides.add(predictedTierReport.getFirstPlace().withColor(WvwColor.green));
+                        homeColor = WvwColor.blue;
                     } else {
-                        var stays = predictedTierReport.getSecondPlace();
-                        stays.setColor(WvwColor.blue);
-                        sides.add(stays);
-                        homeWorldSide.setColor(WvwColor.green);
+                        sides.add(predictedTierReport.getSecondPlace().withColor(WvwColor.blue));
+                        homeColor = WvwColor.green;
                     }
                 } else if(predictedTier == EW_TIER_COUNT) {
-                    WvwMatchupReport predictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier));
-                    WvwMatchupReport abovePredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier-1));
-                    var dropsDown = abovePredictedTierReport.getThirdPlace();
-                    dropsDown.setColor(WvwColor.green);
-                    sides.add(dropsDown);
+                    WvwMatchupReport predictedTierReport = getTierReport(snapshot, predictedTier);
+                    WvwMatchupReport abovePredictedTierReport = getTierReport(snapshot, predictedTier-1);
+                    sides.add(abovePredictedTierReport.getThirdPlace().withColor(WvwColor.green));
                     //home stays in tier 5, but is it seconds or third?
                     if(homeCurrentPlacement == 2) {
-                        var stays = predictedTierReport.getThirdPlace();
-                        stays.setColor(WvwColor.red);
-                        sides.add(stays);
-                        homeWorldSide.setColor(WvwColor.blue);
+                        sides.add(predictedTierReport.getThirdPlace().withColor(WvwColor.red));
+                        homeColor = WvwColor.blue;
                     } else {
-                        var stays = predictedTierReport.getSecondPlace();
-                        stays.setColor(WvwColor.blue);
-                        sides.add(stays);
-                        homeWorldSide.setColor(WvwColor.red);
+                        sides.add(predictedTierReport.getSecondPlace().withColor(WvwColor.blue));
+                        homeColor = WvwColor.red;
                     }
                 } else {
                     //home stays in a middle tier
-                    WvwMatchupReport belowPredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier+1));
-                    WvwMatchupReport abovePredictedTierReport = gw2WvwService.createMatchupReport(matchupId(predictedTier-1));
-                    var dropsDown = abovePredictedTierReport.getThirdPlace();
-                    dropsDown.setColor(WvwColor.green);
-                    sides.add(dropsDown);
-                    var advances = belowPredictedTierReport.getFirstPlace();
-                    advances.setColor(WvwColor.red);
-                    sides.add(advances);
-                    homeWorldSide.setColor(WvwColor.blue);
+                    WvwMatchupReport belowPredictedTierReport = getTierReport(snapshot, predictedTier+1);
+                    WvwMatchupReport abovePredictedTierReport = getTierReport(snapshot, predictedTier-1);
+                    sides.add(abovePredictedTierReport.getThirdPlace().withColor(WvwColor.green));
+                    sides.add(belowPredictedTierReport.getFirstPlace().withColor(WvwColor.red));
+                    homeColor = WvwColor.blue;
                 }
                 break;
         }
+        //home world side (with the decided color) is the first
+        sides.add(0, homeWorldSide.withColor(homeColor));
         return sides;
     }
 
+    /**
+     * Get the report of an EU tier from the snapshot.
+     * @throws Gw2ApiException If the tier is not in the snapshot.
+     */
+    private WvwMatchupReport getTierReport(WvwSnapshot snapshot, int tier) throws Gw2ApiException {
+        return snapshot.getReport(matchupId(tier))
+                .orElseThrow(() -> new Gw2ApiException("Tier " + tier + " is missing from the Wvw snapshot!"));
+    }
+
     /**
      * Calculate WvW reset time. For EU servers it is 20:00 PM when daylight savings are active
      * and 19:00 PM when they aren't.
@@ -0,0 +1,54 @@
+package com.gaspar.modwvwbot.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of scanning some sources of a Gw2 account. If some sources failed, the amounts only contain the
+ * counts from the others. Sources that were only partly counted before the deadline are not failed, their
+ * counts so far are included.
+ * @see AccountSource
+ */
+@Getter
+@RequiredArgsConstructor
+public class AccountScanResult {
+
+    /**
+     * Items or currencies of interest, counted from all sources that succeeded.
+     */
+    private final List<Amount> amounts;
+
+    /**
+     * How long each source took, including the failed ones.
+     */
+    private final Map<AccountSource, Duration> timings;
+
+    /**
+     * Exception of each source that failed, already unwrapped.
+     */
+    private final Map<AccountSource, Throwable> errors;
+
+    /**
+     * Sources that were only partly counted, because the deadline passed.
+     */
+    private final Set<AccountSource> partialSources;
+
+    /**
+     * Checks if every source failed, so there is nothing to show.
+     */
+    public boolean isFailed() {
+        return !errors.isEmpty() && errors.size() == timings.size();
+    }
+
+    /**
+     * Checks if some sources failed or were only partly counted, so the amounts may be less than the real ones.
+     */
+    public boolean isPartial() {
+        return (!errors.isEmpty() && !isFailed()) || !partialSources.isEmpty();
+    }
+}
@@ -0,0 +1,35 @@
+package com.gaspar.modwvwbot.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Places of a Gw2 account where items or currencies can be counted.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2AccountScanService
+ */
+@Getter
+@RequiredArgsConstructor
+public enum AccountSource {
+
+    INVENTORIES("karakterek", true),
+
+    BANK("bank", false),
+
+    MATERIAL_STORAGE("tárhely", false),
+
+    WALLET("pénztárca", false),
+
+    LEGENDARY_ARMORY("legendás fegyvertár", false);
+
+    /**
+     * Name of the source that can be shown to the user.
+     */
+    private final String hungarianName;
+
+    /**
+     * If the source may be counted in several requests (such as the inventories one by one), so what was
+     * counted before the deadline can be kept.
+     */
+    private final boolean countedIncrementally;
+
+}
@@ -0,0 +1,43 @@
+package com.gaspar.modwvwbot.model;
+
+import com.gaspar.modwvwbot.model.gw2api.HomeWorldResponse;
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * A Gw2 world, saved from the /worlds endpoint. The worlds are loaded from here at startup, so the
+ * world directory is filled even if the API is not available.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2WorldService
+ */
+@Entity
+@Table(name = "catalog_world")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class CatalogWorld {
+
+    /**
+     * World ID from the GW2 API.
+     */
+    @Id
+    @Column(name = "world_id")
+    private Integer worldId;
+
+    @Column(name = "world_name", nullable = false)
+    private String worldName;
+
+    @Column(name = "population", nullable = false)
+    @Enumerated(EnumType.ORDINAL)
+    private Population population;
+
+    public static CatalogWorld fromResponse(HomeWorldResponse response) {
+        return new CatalogWorld(response.getId(), response.getName(), response.getPopulation());
+    }
+
+    public HomeWorldResponse toResponse() {
+        return new HomeWorldResponse(worldId, worldName, population);
+    }
+}
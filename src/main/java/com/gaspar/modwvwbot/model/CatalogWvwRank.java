@@ -0,0 +1,43 @@
+package com.gaspar.modwvwbot.model;
+
+import com.gaspar.modwvwbot.model.gw2api.WvwRank;
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * A Wvw rank, saved from the /wvw/ranks endpoint. Ranks only change with game updates.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2RankCatalogService
+ */
+@Entity
+@Table(name = "catalog_wvw_rank")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class CatalogWvwRank {
+
+    /**
+     * Rank ID from the GW2 API.
+     */
+    @Id
+    @Column(name = "rank_id")
+    private Integer rankId;
+
+    /**
+     * Name, such as "Diamond Raider".
+     */
+    @Column(name = "title", nullable = false)
+    private String title;
+
+    /**
+     * Minimum Wvw level of this rank.
+     */
+    @Column(name = "min_rank", nullable = false)
+    private Integer minRank;
+
+    public static CatalogWvwRank fromResponse(WvwRank rank) {
+        return new CatalogWvwRank(rank.getId(), rank.getTitle(), rank.getMinRank());
+    }
+}
@@ -0,0 +1,30 @@
+package com.gaspar.modwvwbot.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.Month;
+
+/**
+ * Identifies one row of the command usage table: a command in a guild, in one month.
+ * @see CommandUsageStatistic
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+@RequiredArgsConstructor
+public class CommandUsageKey {
+
+    /**
+     * Discord id of the guild or {@link CommandUsageStatistic#PRIVATE_MESSAGE_SOURCE}.
+     */
+    private final long guildId;
+
+    private final String commandName;
+
+    private final int year;
+
+    private final Month month;
+}
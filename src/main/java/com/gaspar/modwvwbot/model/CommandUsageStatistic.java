@@ -8,16 +8,15 @@ import java.time.Month;
 
 /**
  * Command usage table. Saves for each guild the amount of commands used. Includes all command
- * usage: success, fail, server error, anything.
+ * usage: success, fail, server error, anything. The unique constraint serves the queries by guild, and
+ * the index the queries by command.
  */
 @Entity
 @Table(name = "command_usage_stat", uniqueConstraints = @UniqueConstraint(
         columnNames = {"guild_id", "command_name", "year", "month"}
-))
-@AllArgsConstructor
+), indexes = @Index(name = "command_usage_stat_command_idx", columnList = "command_name, year, month"))
 @NoArgsConstructor
 @ToString
-@Builder
 @Getter
 public class CommandUsageStatistic {
 
@@ -61,11 +60,4 @@ public class CommandUsageStatistic {
     @Column(nullable = false)
     private Integer count;
 
-    /**
-     * Increase command usage by 1.
-     */
-    public void increment() {
-        ++count;
-    }
-
 }
@@ -0,0 +1,18 @@
+package com.gaspar.modwvwbot.model;
+
+import java.time.Month;
+
+/**
+ * Projection of the command usage table: how many times a command was used in a guild, in one month.
+ * @see com.gaspar.modwvwbot.repository.CommandUsageRepository#sumByGuildId(long)
+ */
+public interface GuildCommandUsage {
+
+    Integer getYear();
+
+    Month getMonth();
+
+    String getCommandName();
+
+    Long getCount();
+}
@@ -0,0 +1,16 @@
+package com.gaspar.modwvwbot.model;
+
+import java.time.Month;
+
+/**
+ * Projection of the command usage table: how many times a command was used in all guilds, in one month.
+ * @see com.gaspar.modwvwbot.repository.CommandUsageRepository#sumByCommandName(String)
+ */
+public interface MonthlyCommandUsage {
+
+    Integer getYear();
+
+    Month getMonth();
+
+    Long getCount();
+}
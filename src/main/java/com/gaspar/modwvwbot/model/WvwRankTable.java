@@ -0,0 +1,55 @@
+package com.gaspar.modwvwbot.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * All Wvw ranks, sorted by their minimum level, so the rank of a level can be found with a binary search.
+ * Immutable.
+ */
+public class WvwRankTable {
+
+    /**
+     * Minimum levels of the ranks, in increasing order.
+     */
+    private final int[] minRanks;
+
+    /**
+     * Titles of the ranks, in the same order as {@link #minRanks}.
+     */
+    private final String[] titles;
+
+    public WvwRankTable(List<CatalogWvwRank> ranks) {
+        var sortedRanks = ranks.stream()
+                .sorted(Comparator.comparingInt(CatalogWvwRank::getMinRank))
+                .toArray(CatalogWvwRank[]::new);
+        minRanks = new int[sortedRanks.length];
+        titles = new String[sortedRanks.length];
+        for(int i = 0; i < sortedRanks.length; i++) {
+            minRanks[i] = sortedRanks[i].getMinRank();
+            titles[i] = sortedRanks[i].getTitle();
+        }
+    }
+
+    /**
+     * Find the title of the highest rank whose minimum level is not above the given level.
+     * @param level Wvw level of a player.
+     * @return The title, or "Invader" if the table is empty or the level is below all ranks.
+     */
+    public String findTitle(int level) {
+        int position = Arrays.binarySearch(minRanks, level);
+        //not found: position is (-(insertion point) - 1), the floor is just before the insertion point
+        int floor = position >= 0 ? position : -position - 2;
+        if(floor < 0) return "Invader";
+        return titles[floor];
+    }
+
+    public boolean isEmpty() {
+        return minRanks.length == 0;
+    }
+
+    public int size() {
+        return minRanks.length;
+    }
+}
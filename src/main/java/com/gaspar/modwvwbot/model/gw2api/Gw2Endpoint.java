@@ -0,0 +1,73 @@
+package com.gaspar.modwvwbot.model.gw2api;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+/**
+ * Logical Gw2 API endpoints used by the bot. Raw URLs contain API keys, character names and
+ * IDs, so requests are identified by these instead. Each endpoint has a caching policy and belongs
+ * to a family. This is probably better placed in the application.yml, but it's a lot simpler this way.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2ApiGateway
+ */
+@RequiredArgsConstructor
+public enum Gw2Endpoint {
+
+    ACCOUNT(Duration.ZERO, Gw2EndpointFamily.ACCOUNT),
+
+    ACCOUNT_BANK(Duration.ZERO, Gw2EndpointFamily.ACCOUNT),
+
+    ACCOUNT_MATERIALS(Duration.ZERO, Gw2EndpointFamily.ACCOUNT),
+
+    ACCOUNT_WALLET(Duration.ZERO, Gw2EndpointFamily.ACCOUNT),
+
+    ACCOUNT_LEGENDARY_ARMORY(Duration.ZERO, Gw2EndpointFamily.ACCOUNT),
+
+    CHARACTERS(Duration.ZERO, Gw2EndpointFamily.CHARACTERS),
+
+    CHARACTER_INVENTORY(Duration.ZERO, Gw2EndpointFamily.CHARACTERS),
+
+    /**
+     * The world list practically never changes, only the populations do, about once a day.
+     */
+    WORLDS(Duration.ofMinutes(30), Gw2EndpointFamily.WORLDS),
+
+    /**
+     * Worlds of the matchups (/wvw/matches/overview). Only changes at reset, but is cached
+     * together with the live data, so they are always from the same matchup.
+     */
+    WVW_MATCHES_OVERVIEW(Duration.ofSeconds(60), Gw2EndpointFamily.WVW),
+
+    /**
+     * Live victory points and scores (/wvw/matches/scores), changes all the time.
+     */
+    WVW_MATCHES_SCORES(Duration.ofSeconds(60), Gw2EndpointFamily.WVW),
+
+    /**
+     * Live kills and deaths (/wvw/matches/stats), changes all the time.
+     */
+    WVW_MATCHES_STATS(Duration.ofSeconds(60), Gw2EndpointFamily.WVW),
+
+    /**
+     * Static data, does not change between game updates.
+     */
+    WVW_RANKS(Duration.ofHours(24), Gw2EndpointFamily.WVW);
+
+    /**
+     * How long a response from this endpoint can be served from the cache. Zero means
+     * it is never cached.
+     */
+    @Getter
+    private final Duration timeToLive;
+
+    /**
+     * Family of the endpoint, which shares a circuit breaker.
+     */
+    @Getter
+    private final Gw2EndpointFamily family;
+
+    public boolean isCached() {
+        return !timeToLive.isZero();
+    }
+}
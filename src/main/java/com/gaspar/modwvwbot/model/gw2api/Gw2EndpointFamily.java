@@ -0,0 +1,19 @@
+package com.gaspar.modwvwbot.model.gw2api;
+
+/**
+ * Groups of Gw2 API endpoints that are served by the same backend, so they usually fail together. Each
+ * family has its own circuit breaker.
+ * @see Gw2Endpoint
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2CircuitBreaker
+ */
+public enum Gw2EndpointFamily {
+
+    ACCOUNT,
+
+    CHARACTERS,
+
+    WVW,
+
+    WORLDS
+
+}
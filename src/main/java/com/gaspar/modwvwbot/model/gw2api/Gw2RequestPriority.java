@@ -0,0 +1,25 @@
+package com.gaspar.modwvwbot.model.gw2api;
+
+/**
+ * Lanes of the Gw2 API rate limiter. Interactive requests are always served before background ones.
+ * @see com.gaspar.modwvwbot.services.gw2api.Gw2RateLimiter
+ */
+public enum Gw2RequestPriority {
+
+    /**
+     * Request made to answer a slash command, someone is waiting for it.
+     */
+    INTERACTIVE,
+
+    /**
+     * Request made by a scheduled job, can wait.
+     */
+    BACKGROUND,
+
+    /**
+     * Hedged copy of an interactive request, see {@link com.gaspar.modwvwbot.services.gw2api.Gw2HedgingPolicy}.
+     * Only sent from spare budget, it never waits for a token.
+     */
+    HEDGE
+
+}
@@ -1,33 +1,38 @@
 package com.gaspar.modwvwbot.model.matchup;
 
-import lombok.Data;
+import lombok.Getter;
 
-import java.time.LocalDateTime;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 /**
- * Stores state of a Wvw matchup.
+ * Stores state of a Wvw matchup. Immutable, so the same report can be shared by every guild.
  * @see WvwMatchupSide
  */
-@Data
+@Getter
 public class WvwMatchupReport {
 
+    /**
+     * Matchup ID, in the format of R-T, for example 2-1.
+     */
+    private final String matchId;
+
     /**
      * Tier of the matchup.
      */
-    private int tier;
+    private final int tier;
 
     /**
-     * List with the 3 sides sorted by victory points.
+     * Unmodifiable list with the 3 sides sorted by victory points.
      */
     private final List<WvwMatchupSide> sides;
 
-    public WvwMatchupReport(List<WvwMatchupSide> sides, int tier) {
+    public WvwMatchupReport(String matchId, List<WvwMatchupSide> sides, int tier) {
+        this.matchId = matchId;
         this.sides = sides.stream()
                 .sorted(Comparator.comparing(WvwMatchupSide::getVictoryPoints))
-                .collect(Collectors.toList());
+                .collect(Collectors.toUnmodifiableList());
         this.tier = tier;
     }
 
@@ -7,6 +7,10 @@ import lombok.Data;
 /**
  * Gw2 APIs response when querying /wvw with one world ID. End time is not a field because
  * API returns the reset for US servers and not EU!
+ * <p>
+ * The same class is used for the lighter sub-resources of the matches endpoint, each filling only
+ * some fields: /overview the worlds, /scores the victory points and /stats the kills and deaths.
+ * See {@link #merge(WvwMatchupResponse, WvwMatchupResponse, WvwMatchupResponse)}.
  */
 @Data
 @JsonIgnoreProperties
@@ -41,4 +45,24 @@ public class WvwMatchupResponse {
      */
     @JsonProperty("victory_points")
     private MatchupStatisticResponse victoryPoints;
+
+    /**
+     * Combine the sub-resource responses of the same matchup into a complete response.
+     * @param overview Response of /wvw/matches/overview.
+     * @param scores Response of /wvw/matches/scores.
+     * @param stats Response of /wvw/matches/stats.
+     */
+    public static WvwMatchupResponse merge(WvwMatchupResponse overview, WvwMatchupResponse scores, WvwMatchupResponse stats) {
+        if(!overview.matchId.equals(scores.matchId) || !overview.matchId.equals(stats.matchId)) {
+            throw new IllegalArgumentException("Responses of different matchups can't be merged: " + overview.matchId
+                    + ", " + scores.matchId + ", " + stats.matchId);
+        }
+        var merged = new WvwMatchupResponse();
+        merged.setMatchId(overview.matchId);
+        merged.setAllWorlds(overview.allWorlds);
+        merged.setVictoryPoints(scores.victoryPoints);
+        merged.setKills(stats.kills);
+        merged.setDeaths(stats.deaths);
+        return merged;
+    }
 }
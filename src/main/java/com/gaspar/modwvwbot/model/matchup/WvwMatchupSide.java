@@ -1,55 +1,58 @@
 package com.gaspar.modwvwbot.model.matchup;
 
 import lombok.Builder;
-import lombok.Data;
+import lombok.Value;
+import lombok.With;
 
 import java.util.List;
 
 /**
- * One of the 3 sides in a Wvw matchup (like "red").
+ * One of the 3 sides in a Wvw matchup (like "red"). Immutable, use {@link #withColor(WvwColor)} to
+ * get a copy with another color.
  * @see WvwMatchupReport
  * @see WvwColor
  */
-@Data
+@Value
 @Builder
 public class WvwMatchupSide {
 
     /**
      * Color of this side.
      */
-    private WvwColor color;
+    @With
+    WvwColor color;
 
     /**
      * Names of the worlds on this side. The first one is always
      * the main server, the rest are the paired servers.
      */
-    private List<String> worldNames;
+    List<String> worldNames;
 
     /**
      * Ids of the worlds on this side. The first one is always
      * the main server, the rest are the paired servers.
      */
-    private List<Integer> worldIds;
+    List<Integer> worldIds;
 
     /**
      * Amount of victory points this side has.
      */
-    private int victoryPoints;
+    int victoryPoints;
 
     /**
      * Kill count of this side.
      */
-    private int killCount;
+    int killCount;
 
     /**
      * Death count of this side.
      */
-    private int deathCount;
+    int deathCount;
 
     /**
      * K/D ratio.
      */
-    private float killDeathRatio;
+    float killDeathRatio;
 
     /**
      * Checks if this side has the specified world.
@@ -0,0 +1,70 @@
+package com.gaspar.modwvwbot.model.matchup;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reports of every WvW matchup, made at the same time. Immutable.
+ * @see WvwMatchupReport
+ */
+public class WvwSnapshot {
+
+    /**
+     * When the matchups were fetched from the API.
+     */
+    @Getter
+    private final Instant createdAt;
+
+    /**
+     * Match ID - report pairs.
+     */
+    private final Map<String, WvwMatchupReport> reportsByMatchId = new HashMap<>();
+
+    /**
+     * World ID - report of the matchup where the world plays.
+     */
+    private final Map<Integer, WvwMatchupReport> reportsByWorldId = new HashMap<>();
+
+    public WvwSnapshot(Collection<WvwMatchupReport> reports, Instant createdAt) {
+        this.createdAt = createdAt;
+        for(WvwMatchupReport report: reports) {
+            reportsByMatchId.put(report.getMatchId(), report);
+            for(WvwMatchupSide side: report.getSides()) {
+                for(Integer worldId: side.getWorldIds()) {
+                    reportsByWorldId.put(worldId, report);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a report by match ID, for example 2-1.
+     */
+    public Optional<WvwMatchupReport> getReport(String matchId) {
+        return Optional.ofNullable(reportsByMatchId.get(matchId));
+    }
+
+    /**
+     * Get the report of the matchup where the world plays.
+     */
+    public Optional<WvwMatchupReport> getReportOfWorld(int worldId) {
+        return Optional.ofNullable(reportsByWorldId.get(worldId));
+    }
+
+    /**
+     * Checks if this snapshot was created more than {@code maxAge} ago.
+     */
+    public boolean isOlderThan(Duration maxAge) {
+        return createdAt.plus(maxAge).isBefore(Instant.now());
+    }
+
+    public int getMatchupCount() {
+        return reportsByMatchId.size();
+    }
+}
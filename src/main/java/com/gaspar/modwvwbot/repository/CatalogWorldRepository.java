@@ -0,0 +1,10 @@
+package com.gaspar.modwvwbot.repository;
+
+import com.gaspar.modwvwbot.model.CatalogWorld;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CatalogWorldRepository extends JpaRepository<CatalogWorld, Integer> {
+
+}
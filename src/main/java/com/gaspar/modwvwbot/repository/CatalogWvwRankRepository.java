@@ -0,0 +1,10 @@
+package com.gaspar.modwvwbot.repository;
+
+import com.gaspar.modwvwbot.model.CatalogWvwRank;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CatalogWvwRankRepository extends JpaRepository<CatalogWvwRank, Integer> {
+
+}
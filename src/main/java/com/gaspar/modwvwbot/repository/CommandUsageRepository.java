@@ -1,30 +1,33 @@
 package com.gaspar.modwvwbot.repository;
 
 import com.gaspar.modwvwbot.model.CommandUsageStatistic;
-import org.springframework.data.domain.Sort;
+import com.gaspar.modwvwbot.model.GuildCommandUsage;
+import com.gaspar.modwvwbot.model.MonthlyCommandUsage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.Month;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
-public interface CommandUsageRepository extends JpaRepository<CommandUsageStatistic, Long> {
+public interface CommandUsageRepository extends JpaRepository<CommandUsageStatistic, Long>, CommandUsageRepositoryCustom {
 
     /**
-     * Get all statistics from a guild.
+     * Get the usage of each command in a guild, summed by year and month. Uses the unique index,
+     * which starts with the guild ID.
      */
-    List<CommandUsageStatistic> findByGuildId(long guildId);
+    @Query("SELECT c.year AS year, c.month AS month, c.commandName AS commandName, SUM(c.count) AS count " +
+            "FROM CommandUsageStatistic c WHERE c.guildId = :guildId " +
+            "GROUP BY c.year, c.month, c.commandName")
+    List<GuildCommandUsage> sumByGuildId(@Param("guildId") long guildId);
 
     /**
-     * Get all command usage statistics of a command.
+     * Get the usage of a command in all guilds, summed by year and month.
      */
-    List<CommandUsageStatistic> findByCommandName(String commandName);
-
-    /**
-     * Find one command usage statistic.
-     */
-    Optional<CommandUsageStatistic> findByGuildIdAndCommandNameAndYearAndMonth(long guildId, String commandName, int year, Month month);
+    @Query("SELECT c.year AS year, c.month AS month, SUM(c.count) AS count " +
+            "FROM CommandUsageStatistic c WHERE c.commandName = :commandName " +
+            "GROUP BY c.year, c.month")
+    List<MonthlyCommandUsage> sumByCommandName(@Param("commandName") String commandName);
 
 }
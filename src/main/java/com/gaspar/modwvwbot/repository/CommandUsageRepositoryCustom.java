@@ -0,0 +1,19 @@
+package com.gaspar.modwvwbot.repository;
+
+import com.gaspar.modwvwbot.model.CommandUsageKey;
+
+import java.util.Map;
+
+/**
+ * Command usage operations that can't be expressed with Spring Data queries.
+ * @see CommandUsageRepository
+ */
+public interface CommandUsageRepositoryCustom {
+
+    /**
+     * Add to the count of command usages, creating the rows that don't exist yet. All rows are upserted in
+     * one batch, and each upsert is atomic, so concurrent increments are not lost.
+     * @param increments How much to add to the count of each row.
+     */
+    void incrementCounts(Map<CommandUsageKey, Long> increments);
+}
@@ -0,0 +1,34 @@
+package com.gaspar.modwvwbot.repository;
+
+import com.gaspar.modwvwbot.model.CommandUsageKey;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of {@link CommandUsageRepositoryCustom}, with a PostgreSQL upsert. New rows get their ID from
+ * the same sequence that Hibernate uses.
+ */
+@RequiredArgsConstructor
+public class CommandUsageRepositoryImpl implements CommandUsageRepositoryCustom {
+
+    private static final String UPSERT_SQL = "INSERT INTO command_usage_stat (id, guild_id, command_name, year, month, count) " +
+            "VALUES (nextval('hibernate_sequence'), ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (guild_id, command_name, year, month) " +
+            "DO UPDATE SET count = command_usage_stat.count + excluded.count";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void incrementCounts(Map<CommandUsageKey, Long> increments) {
+        if(increments.isEmpty()) return;
+        List<Object[]> rows = new ArrayList<>(increments.size());
+        increments.forEach((key, count) -> rows.add(new Object[] {
+                key.getGuildId(), key.getCommandName(), key.getYear(), key.getMonth().name(), count
+        }));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    }
+}
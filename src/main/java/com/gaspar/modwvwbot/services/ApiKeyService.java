@@ -1,11 +1,13 @@
 package com.gaspar.modwvwbot.services;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2ApiUnavailableException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
 import com.gaspar.modwvwbot.model.ApiKey;
 import com.gaspar.modwvwbot.model.gw2api.Gw2Account;
 import com.gaspar.modwvwbot.repository.ApiKeyRepository;
+import com.gaspar.modwvwbot.services.gw2api.Gw2AccountCache;
 import com.gaspar.modwvwbot.services.gw2api.Gw2AccountService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -52,6 +54,7 @@ public class ApiKeyService {
 
     private final ApiKeyRepository apiKeyRepository;
     private final Gw2AccountService gw2UserService;
+    private final Gw2AccountCache gw2AccountCache;
 
     @PostConstruct
     public void init() {
@@ -137,6 +140,10 @@ public class ApiKeyService {
                 String emote = EmoteUtils.defaultEmote("no_entry_sign");
                 message.editMessage("Nem sikerült hitelesíteni ezzel a kulccsal " + emote +
                         "! Ellenőrizd, hogy jó kulcsot adtál-e meg, és megvannak rajta ezek az engedélyek: " + permissions).queue();
+            } catch (Gw2ApiUnavailableException e) {
+                String emote = EmoteUtils.defaultEmote("no_entry_sign");
+                message.editMessage("A GW2 API jelenleg nem elérhető " + emote +
+                        ". Ez nem a te hibád, próbáld újra kicsit később.").queue();
             } catch (Gw2ApiException e) {
                 String emote = EmoteUtils.defaultEmote("no_entry_sign");
                 message.editMessage("Nem sikerült elérni a GW2 API-t " + emote +
@@ -158,6 +165,8 @@ public class ApiKeyService {
         var optional = apiKeyRepository.findByUserId(userId);
         if(optional.isPresent()) {
             ApiKey apiKey = optional.get();
+            //the new key might belong to a different account
+            gw2AccountCache.evict(apiKey.getKey());
             apiKey.setKey(keyString);
             apiKeyRepository.save(apiKey);
             log.info("User '{}' has updated their API key.", event.getAuthor().getName());
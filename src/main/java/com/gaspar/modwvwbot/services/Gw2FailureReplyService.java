@@ -0,0 +1,51 @@
+package com.gaspar.modwvwbot.services;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2ApiUnavailableException;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.EmoteUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Replies to the deferred commands that failed because of the Gw2 API.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2FailureReplyService {
+
+    private final ApiKeyService apiKeyService;
+
+    /**
+     * Reply with an error message after a failed Gw2 API call.
+     * @param error Exception the request failed with, already unwrapped.
+     * @param hook Used to respond to the interaction.
+     * @return Future of the sent error message.
+     */
+    public CompletableFuture<Message> replyToFailure(Throwable error, InteractionHook hook) {
+        if(error instanceof UnauthorizedException) {
+            return hook.editOriginal(apiKeyService.getNoPermissionsMessage()).submit();
+        } else if(error instanceof Gw2ApiUnavailableException) {
+            String errorEmote = EmoteUtils.defaultEmote("no_entry_sign");
+            return hook.editOriginal("A Gw2 API jelenleg nem elérhető " + errorEmote + ". Ez nem a te hibád, próbáld újra " +
+                    "kicsit később.").submit();
+        } else if(error instanceof Gw2DeadlineExceededException) {
+            String errorEmote = EmoteUtils.defaultEmote("hourglass");
+            return hook.editOriginal("A Gw2 API túl lassan válaszolt " + errorEmote + ". Próbáld újra kicsit később.").submit();
+        } else if(error instanceof Gw2ApiException) {
+            String errorEmote = EmoteUtils.defaultEmote("no_entry_sign");
+            return hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + errorEmote + ". Ez nem a te hibád, próbáld újra " +
+                    "kicsit később.").submit();
+        } else {
+            log.error("Unexpected error while processing Gw2 API response.", error);
+            return hook.editOriginal("Hiba történt. Kérlek ezt jelezd a készítőmnek.").submit();
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.HomeWorldNotFoundException;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
 import com.gaspar.modwvwbot.model.HomeWorld;
 import com.gaspar.modwvwbot.model.Population;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
 import com.gaspar.modwvwbot.model.gw2api.HomeWorldResponse;
 import com.gaspar.modwvwbot.repository.HomeWorldRepository;
 import com.gaspar.modwvwbot.services.gw2api.Gw2WorldService;
 import lombok.extern.slf4j.Slf4j;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
@@ -22,13 +24,15 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Handles the /home_world command.
+ * Handles the /home_world command. It is deferred, so the authorization, the database and the Gw2 API are only
+ * used after the command was acknowledged.
  */
 @Service
 @Slf4j
-public class HomeWorldCommandService implements SlashCommandHandler {
+public class HomeWorldCommandService implements DeferredSlashCommandHandler {
 
     private static final String HOME_WORLD_COMMAND = "/home_world";
 
@@ -59,22 +63,19 @@ public class HomeWorldCommandService implements SlashCommandHandler {
     }
 
     @Override
-    public void handleSlashCommand(@NotNull SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(@NotNull SlashCommandInteractionEvent event, InteractionHook hook) {
         var homeWorldName = getWorldNameOptionOrNull(event);
-        if(homeWorldName != null) {
-            event.deferReply().queue(hook -> {
-                //authorize
-                if(authorizationService.authorize(event, hook)) {
-                    String loading = EmoteUtils.animatedEmote("loading", loadingId);
-                    hook.editOriginal("Világ frissítése... " + loading).queue();
-                    //set new home world
-                    saveNewHomeWorld(event, hook, homeWorldName);
-                }
-            });
-
-        } else {
-            replyWithCurrentHomeWorld(event);
+        if(homeWorldName == null) {
+            return replyWithCurrentHomeWorld(event, hook);
+        }
+        //authorize
+        if(!authorizationService.authorize(event, hook)) {
+            return CompletableFuture.completedFuture(null);
         }
+        String loading = EmoteUtils.animatedEmote("loading", loadingId);
+        hook.editOriginal("Világ frissítése... " + loading).queue();
+        //set new home world
+        return saveNewHomeWorld(event, hook, homeWorldName);
     }
 
     /**
@@ -98,7 +99,7 @@ public class HomeWorldCommandService implements SlashCommandHandler {
         return optionName.getAsString();
     }
 
-    private void replyWithCurrentHomeWorld(SlashCommandInteractionEvent event) {
+    private CompletableFuture<Message> replyWithCurrentHomeWorld(SlashCommandInteractionEvent event, InteractionHook hook) {
         var homeWorld = homeWorldRepository.findByGuildId(event.getGuild().getIdLong());
         if(homeWorld.isPresent()) {
             //reply with current home world
@@ -114,12 +115,12 @@ public class HomeWorldCommandService implements SlashCommandHandler {
                         .append(gemEmote);
             }
 
-            event.reply(message.toString()).queue();
+            return hook.editOriginal(message.toString()).submit();
         } else {
             log.info("'{}' has queried the home world of guild '{}', but there is not home world set.",
                     event.getUser().getName(), event.getGuild().getName());
-            event.reply("Jelenleg nincs beállítva WvW világ a guildnek. Ez szükséges egyes parancsok működéséhez, és " +
-                    "a '/home_world [világ neve]' utasítással tehető meg.").queue();
+            return hook.editOriginal("Jelenleg nincs beállítva WvW világ a guildnek. Ez szükséges egyes parancsok működéséhez, és " +
+                    "a '/home_world [világ neve]' utasítással tehető meg.").submit();
         }
     }
 
@@ -128,8 +129,9 @@ public class HomeWorldCommandService implements SlashCommandHandler {
      * @param event Slash command event. DONT use this to reply, only read properties.
      * @param hook Interactino hook, use this to reply!
      * @param homeWorldName Name the user specified for new home world. Not validated here!
+     * @return Future of the sent answer.
      */
-    private void saveNewHomeWorld(
+    private CompletableFuture<Message> saveNewHomeWorld(
             SlashCommandInteractionEvent event,
             InteractionHook hook,
             String homeWorldName
@@ -160,14 +162,14 @@ public class HomeWorldCommandService implements SlashCommandHandler {
                         .build();
                 homeWorldRepository.save(newHomeWorld);
             }
-            hook.editOriginal("A guild WvW világa mostantól **" + homeWorldResponse.getName() + "**.").queue();
+            return hook.editOriginal("A guild WvW világa mostantól **" + homeWorldResponse.getName() + "**.").submit();
         } catch (Gw2ApiException e) {
             log.warn("Failed to validate world with name '{}' because of GW2 API failure.", homeWorldName, e);
-            hook.editOriginal("A GW2 API hibás választ adott, vagy nem válaszolt. Sajnos nem sikerült beállítani az új világot.").queue();
+            return hook.editOriginal("A GW2 API hibás választ adott, vagy nem válaszolt. Sajnos nem sikerült beállítani az új világot.").submit();
         } catch (HomeWorldNotFoundException e) {
             log.info("'{}' is not a valid GW2 world name.", homeWorldName);
-            hook.editOriginal("A *'" + homeWorldName + "'* nem egy GW2 világ. Ellenőrizd, hogy nem " +
-                    "gépelted-e el. Figyelem, a nem angol világoknál a nyelvi tag is a név része, pl: 'Dzagonur [DE]'.").queue();;
+            return hook.editOriginal("A *'" + homeWorldName + "'* nem egy GW2 világ. Ellenőrizd, hogy nem " +
+                    "gépelted-e el. Figyelem, a nem angol világoknál a nyelvi tag is a név része, pl: 'Dzagonur [DE]'.").submit();
         }
     }
 
@@ -191,7 +193,7 @@ public class HomeWorldCommandService implements SlashCommandHandler {
                 continue;
             }
             try {
-                HomeWorldResponse response = gw2WorldService.fetchHomeWorldById(homeWorld.getWorldId());
+                HomeWorldResponse response = gw2WorldService.fetchHomeWorldById(homeWorld.getWorldId(), Gw2RequestPriority.BACKGROUND);
                 if(homeWorld.getPopulation() == Population.Full && response.getPopulation() != Population.Full) {
                     log.info("Home world of guild '{}', which is '{}' is no longer full. Sending notification...",
                             guild.getName(), homeWorld.getWorldName());
@@ -1,58 +1,77 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
-import com.gaspar.modwvwbot.exception.Gw2ApiException;
-import com.gaspar.modwvwbot.exception.UnauthorizedException;
-import com.gaspar.modwvwbot.misc.AmountUtils;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
+import com.gaspar.modwvwbot.misc.AmountIndex;
+import com.gaspar.modwvwbot.misc.Deadline;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
+import com.gaspar.modwvwbot.model.AccountSource;
 import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
 import com.gaspar.modwvwbot.model.Amount;
-import com.gaspar.modwvwbot.services.gw2api.Gw2WalletService;
+import com.gaspar.modwvwbot.services.gw2api.Gw2AccountScanService;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service that handles the /wvw_currencies command.
  */
 @Service
 @Slf4j
-public class WvwCurrenciesService implements SlashCommandHandler {
+public class WvwCurrenciesService implements DeferredSlashCommandHandler {
 
     private static final String WVW_CURRENCIES_COMMAND = "/wvw_currencies";
 
+    /**
+     * Optional boolean option that skips the cached account data.
+     */
+    private static final String OPTION_REFRESH = "refresh";
+
     @Value("${com.gaspar.modwvwbot.emote_ids.loading}")
     private long loadingId;
 
-    private final List<WvwItemOrCurrency> wvwItems;
+    /**
+     * Time the command has to reply, counted from when it was sent.
+     */
+    @Value("${com.gaspar.modwvwbot.command_deadline_seconds}")
+    private int commandDeadlineSeconds;
+
+    private final AmountIndex wvwItemsIndex;
     private final ApiKeyService apiKeyService;
-    private final Gw2WalletService gw2WalletService;
+    private final Gw2FailureReplyService gw2FailureReplyService;
+    private final Gw2AccountScanService gw2AccountScanService;
 
     public WvwCurrenciesService(
             @Qualifier("wvwCurrencies") List<WvwItemOrCurrency> wvwItems,
             ApiKeyService apiKeyService,
-            Gw2WalletService gw2WalletService) {
-        this.wvwItems = wvwItems;
+            Gw2FailureReplyService gw2FailureReplyService,
+            Gw2AccountScanService gw2AccountScanService) {
+        this.wvwItemsIndex = new AmountIndex(wvwItems);
         this.apiKeyService = apiKeyService;
-        this.gw2WalletService = gw2WalletService;
+        this.gw2FailureReplyService = gw2FailureReplyService;
+        this.gw2AccountScanService = gw2AccountScanService;
     }
 
     @Override
-    public void handleSlashCommand(@NotNull SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook) {
         log.info("/wvw_currencies command sent by '{}'. Checking for API key...", event.getUser().getName());
         var apiKey = apiKeyService.getApiKeyByUserId(event.getUser().getIdLong());
         if(apiKey.isPresent()) {
             //this user already added an API key
-            event.deferReply().queue(interactionHook -> countCurrenciesAndReply(apiKey.get().getKey(), interactionHook));
+            var optionRefresh = event.getOption(OPTION_REFRESH);
+            boolean refresh = optionRefresh != null && optionRefresh.getAsBoolean();
+            var deadline = Deadline.after(event.getTimeCreated().toInstant(), Duration.ofSeconds(commandDeadlineSeconds));
+            return countCurrenciesAndReply(apiKey.get().getKey(), refresh, deadline, hook);
         } else {
             log.info("User '{}' has no API key added, and the /wvw_currencies command can't be started.", event.getUser().getName());
-            event.reply(apiKeyService.getNoApiKeyAddedMessage()).queue();
+            return hook.editOriginal(apiKeyService.getNoApiKeyAddedMessage()).submit();
         }
     }
 
@@ -67,24 +86,20 @@ public class WvwCurrenciesService implements SlashCommandHandler {
     /**
      * Count currencies and send a reply. Errors and handled here.
      * @param apiKey API key.
+     * @param refresh If true, cached account data is not used.
+     * @param deadline The reply is sent with what was counted until this.
      * @param hook Used to respond to the interaction.
      */
-    private void countCurrenciesAndReply(String apiKey, InteractionHook hook) {
-        try {
-            String loading = EmoteUtils.animatedEmote("loading", loadingId);
-            log.info("Fetching currencies from Gw2 API...");
-            hook.editOriginal("A fizetőeszközeid lekérdezése... " + loading).queue();
-            var amounts = AmountUtils.emptyAmounts(wvwItems);
-            gw2WalletService.countCurrenciesInWallet(apiKey, amounts);
-            //reply
-            sendSummaryReply(amounts, hook);
-        } catch (UnauthorizedException e) {
-            hook.editOriginal(apiKeyService.getNoPermissionsMessage()).queue();
-        } catch (Gw2ApiException e) {
-            String error = EmoteUtils.defaultEmote("no_entry_sign");
-            hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". Ez nem a te hibád, próbáld újra " +
-                    "kicsit később.").queue();
-        }
+    private CompletableFuture<Message> countCurrenciesAndReply(String apiKey, boolean refresh, Deadline deadline, InteractionHook hook) {
+        String loading = EmoteUtils.animatedEmote("loading", loadingId);
+        log.info("Fetching currencies from Gw2 API...");
+        hook.editOriginal("A fizetőeszközeid lekérdezése... " + loading).queue();
+        return gw2AccountScanService.scan(apiKey, wvwItemsIndex, refresh, deadline, AccountSource.WALLET).thenCompose(result -> {
+            if(result.isFailed()) {
+                return gw2FailureReplyService.replyToFailure(result.getErrors().get(AccountSource.WALLET), hook);
+            }
+            return sendSummaryReply(result.getAmounts(), hook);
+        });
     }
 
     /**
@@ -92,7 +107,7 @@ public class WvwCurrenciesService implements SlashCommandHandler {
      * @param amounts Amounts of currencies.
      * @param hook Used to respond to the interaction.
      */
-    private void sendSummaryReply(List<Amount> amounts, InteractionHook hook) {
+    private CompletableFuture<Message> sendSummaryReply(List<Amount> amounts, InteractionHook hook) {
         StringBuilder message = new StringBuilder();
         message.append("Ezeket a WvW-s fizetőeszközöket találtam a fiókodban:\n");
         for(Amount amount: amounts) {
@@ -103,6 +118,6 @@ public class WvwCurrenciesService implements SlashCommandHandler {
             message.append(" - ").append(amount.getItemOrCurrency().getName()).append(": ");
             message.append(amount.getAmount()).append(" ").append(itemEmote).append("\n");
         }
-        hook.editOriginal(message.toString()).queue();
+        return hook.editOriginal(message.toString()).submit();
     }
 }
@@ -1,66 +1,82 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
-import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
-import com.gaspar.modwvwbot.misc.AmountUtils;
+import com.gaspar.modwvwbot.misc.AmountIndex;
+import com.gaspar.modwvwbot.misc.Deadline;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
+import com.gaspar.modwvwbot.model.AccountScanResult;
+import com.gaspar.modwvwbot.model.AccountSource;
 import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
 import com.gaspar.modwvwbot.model.Amount;
-import com.gaspar.modwvwbot.services.gw2api.Gw2BankService;
-import com.gaspar.modwvwbot.services.gw2api.Gw2InventoryService;
-import com.gaspar.modwvwbot.services.gw2api.Gw2StorageService;
+import com.gaspar.modwvwbot.services.gw2api.Gw2AccountScanService;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service that responds to /wvw_items command.
  */
 @Service
 @Slf4j
-public class WvwItemsService implements SlashCommandHandler {
+public class WvwItemsService implements DeferredSlashCommandHandler {
 
     private static final String WVW_ITEMS_COMMAND = "/wvw_items";
 
+    /**
+     * Optional boolean option that skips the cached account data.
+     */
+    private static final String OPTION_REFRESH = "refresh";
+
     @Value("${com.gaspar.modwvwbot.emote_ids.loading}")
     private long loadingId;
 
-    private final List<WvwItemOrCurrency> wvwItems;
+    /**
+     * Time the command has to reply, counted from when it was sent.
+     */
+    @Value("${com.gaspar.modwvwbot.command_deadline_seconds}")
+    private int commandDeadlineSeconds;
+
+    private final AmountIndex wvwItemsIndex;
     private final ApiKeyService apiKeyService;
-    private final Gw2InventoryService gw2InventoryService;
-    private final Gw2BankService gw2BankService;
-    private final Gw2StorageService gw2StorageService;
+    private final Gw2FailureReplyService gw2FailureReplyService;
+    private final Gw2AccountScanService gw2AccountScanService;
 
     public WvwItemsService(
             @Qualifier("wvwItems") List<WvwItemOrCurrency> wvwItems,
             ApiKeyService apiKeyService,
-            Gw2InventoryService gw2InventoryService,
-            Gw2BankService gw2BankService,
-            Gw2StorageService gw2StorageService) {
-        this.wvwItems = wvwItems;
+            Gw2FailureReplyService gw2FailureReplyService,
+            Gw2AccountScanService gw2AccountScanService) {
+        this.wvwItemsIndex = new AmountIndex(wvwItems);
         this.apiKeyService = apiKeyService;
-        this.gw2InventoryService = gw2InventoryService;
-        this.gw2BankService = gw2BankService;
-        this.gw2StorageService = gw2StorageService;
+        this.gw2FailureReplyService = gw2FailureReplyService;
+        this.gw2AccountScanService = gw2AccountScanService;
     }
 
     @Override
-    public void handleSlashCommand(@NotNull SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook) {
         log.info("/wvw_items command sent by '{}'. Checking for API key...", event.getUser().getName());
         var apiKey = apiKeyService.getApiKeyByUserId(event.getUser().getIdLong());
         if(apiKey.isPresent()) {
             //this user already added an API key
-            event.deferReply().queue(interactionHook -> countItemsAndReply(apiKey.get().getKey(), interactionHook));
+            var optionRefresh = event.getOption(OPTION_REFRESH);
+            boolean refresh = optionRefresh != null && optionRefresh.getAsBoolean();
+            var deadline = Deadline.after(event.getTimeCreated().toInstant(), Duration.ofSeconds(commandDeadlineSeconds));
+            return countItemsAndReply(apiKey.get().getKey(), refresh, deadline, hook);
         } else {
             log.info("User '{}' has no API key added, and the /wvw_items command can't be started.", event.getUser().getName());
-            event.reply(apiKeyService.getNoApiKeyAddedMessage()).queue();
+            return hook.editOriginal(apiKeyService.getNoApiKeyAddedMessage()).submit();
         }
     }
 
@@ -75,43 +91,33 @@ public class WvwItemsService implements SlashCommandHandler {
     /**
      * Count items in every possible place and send a reply. The interaction might fail, which is also handled here.
      * @param apiKey API key of the user.
+     * @param refresh If true, cached account data is not used.
+     * @param deadline The reply is sent with what was counted until this.
      * @param interactionHook Used to reply.
      */
-    private void countItemsAndReply(String apiKey, InteractionHook interactionHook) {
-        try {
-            String loading = EmoteUtils.animatedEmote("loading", loadingId);
-            var amounts = AmountUtils.emptyAmounts(wvwItems);
-            //first count items in character inventories
-            log.debug("Counting items of interest in character inventories...");
-            gw2InventoryService.countItemsInInventories(apiKey, amounts, interactionHook);
-            //count items in the bank
-            log.debug("Counting items of interest in the bank...");
-            interactionHook.editOriginal("A bankod tartalmának vizsgálata... " + loading).queue();
-            gw2BankService.countItemsInBank(apiKey, amounts);
-            //count items in the material storage
-            log.debug("Counting items of interest in the material storage...");
-            interactionHook.editOriginal("A tárhelyed tartalmának vizsgálata... " + loading).queue();
-            gw2StorageService.countItemsInStorage(apiKey, amounts);
-            //reply
-            sendSummaryResponse(amounts, interactionHook);
-        } catch (UnauthorizedException e) {
-            interactionHook.editOriginal(apiKeyService.getNoPermissionsMessage()).queue();
-        } catch (Gw2ApiException e) {
-            String error = EmoteUtils.defaultEmote("no_entry_sign");
-            interactionHook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". Ez nem a te hibád, próbáld újra " +
-                    "kicsit később.").queue();
-        }
+    private CompletableFuture<Message> countItemsAndReply(String apiKey, boolean refresh, Deadline deadline, InteractionHook interactionHook) {
+        String loading = EmoteUtils.animatedEmote("loading", loadingId);
+        interactionHook.editOriginal("A karaktereid, a bankod és a tárhelyed vizsgálata... " + loading).queue();
+        log.debug("Counting items of interest in character inventories, the bank and the material storage...");
+        return gw2AccountScanService.scan(apiKey, wvwItemsIndex, refresh, deadline, AccountSource.INVENTORIES, AccountSource.BANK, AccountSource.MATERIAL_STORAGE)
+                .thenCompose(result -> {
+                    if(result.isFailed()) {
+                        return gw2FailureReplyService.replyToFailure(result.getErrors().values().iterator().next(), interactionHook);
+                    }
+                    return sendSummaryResponse(result, interactionHook);
+                });
     }
 
     /**
-     * After a successful count, summarize the results and send response message.
-     * @param amounts Items of interest and how many of them were found.
+     * After a successful count, summarize the results and send response message. If some places
+     * could not be checked, this is mentioned in the message.
+     * @param result Items of interest and how many of them were found.
      * @param hook Used to reply with.
      */
-    private void sendSummaryResponse(List<Amount> amounts, InteractionHook hook) {
+    private CompletableFuture<Message> sendSummaryResponse(AccountScanResult result, InteractionHook hook) {
         StringBuilder message = new StringBuilder();
         message.append("Ezeket a WvW-s tárgyakat találtam a fiókodban:\n");
-        for(Amount amount: amounts) {
+        for(Amount amount: result.getAmounts()) {
             String itemEmote = EmoteUtils.customEmote(
                     amount.getItemOrCurrency().getEmoteName(),
                     amount.getItemOrCurrency().getEmoteId()
@@ -119,6 +125,32 @@ public class WvwItemsService implements SlashCommandHandler {
             message.append(" - ").append(amount.getItemOrCurrency().getName()).append(": ");
             message.append(amount.getAmount()).append(" ").append(itemEmote).append("\n");
         }
-        hook.editOriginal(message.toString()).queue();
+        if(result.isPartial()) {
+            message.append(getPartialResultWarning(result));
+        }
+        return hook.editOriginal(message.toString()).submit();
+    }
+
+    /**
+     * Create a warning that lists the places which could not be checked or were only partly checked, and why.
+     */
+    private String getPartialResultWarning(AccountScanResult result) {
+        String warningEmote = EmoteUtils.defaultEmote("warning");
+        String failedSources = Stream.concat(
+                result.getErrors().entrySet().stream()
+                        .map(entry -> {
+                            String reason = getFailureReason(entry.getValue());
+                            return entry.getKey().getHungarianName() + " (" + reason + ")";
+                        }),
+                result.getPartialSources().stream()
+                        .map(source -> source.getHungarianName() + " (részben, időtúllépés)"))
+                .collect(Collectors.joining(", "));
+        return warningEmote + " Ezeket nem tudtam teljesen megvizsgálni, így a számok kevesebbek lehetnek: " + failedSources;
+    }
+
+    private String getFailureReason(Throwable error) {
+        if(error instanceof UnauthorizedException) return "nincs engedély";
+        if(error instanceof Gw2DeadlineExceededException) return "időtúllépés";
+        return "API hiba";
     }
 }
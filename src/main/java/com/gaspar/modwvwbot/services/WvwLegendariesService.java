@@ -1,75 +1,89 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
-import com.gaspar.modwvwbot.exception.Gw2ApiException;
-import com.gaspar.modwvwbot.exception.UnauthorizedException;
-import com.gaspar.modwvwbot.misc.AmountUtils;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
+import com.gaspar.modwvwbot.misc.AmountIndex;
+import com.gaspar.modwvwbot.misc.Deadline;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
+import com.gaspar.modwvwbot.model.AccountSource;
 import com.gaspar.modwvwbot.model.Amount;
 import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
-import com.gaspar.modwvwbot.services.gw2api.Gw2LegendaryService;
+import com.gaspar.modwvwbot.services.gw2api.Gw2AccountScanService;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles the /wvw_legendaries command.
  */
 @Service
 @Slf4j
-public class WvwLegendariesService implements SlashCommandHandler {
+public class WvwLegendariesService implements DeferredSlashCommandHandler {
 
     private static final String WVW_LEGENDARIES_COMMAND = "/wvw_legendaries";
 
+    /**
+     * Optional boolean option that skips the cached account data.
+     */
+    private static final String OPTION_REFRESH = "refresh";
+
     @Value("${com.gaspar.modwvwbot.emote_ids.loading}")
     private long loadingId;
 
+    /**
+     * Time the command has to reply, counted from when it was sent.
+     */
+    @Value("${com.gaspar.modwvwbot.command_deadline_seconds}")
+    private int commandDeadlineSeconds;
+
     private final ApiKeyService apiKeyService;
-    private final List<WvwItemOrCurrency> wvwLegendaries;
-    private final Gw2LegendaryService gw2LegendaryService;
+    private final Gw2FailureReplyService gw2FailureReplyService;
+    private final AmountIndex wvwLegendariesIndex;
+    private final Gw2AccountScanService gw2AccountScanService;
 
     public WvwLegendariesService(
             ApiKeyService apiKeyService,
             @Qualifier("wvwLegendaries") List<WvwItemOrCurrency> wvwLegendaries,
-            Gw2LegendaryService gw2LegendaryService) {
+            Gw2FailureReplyService gw2FailureReplyService,
+            Gw2AccountScanService gw2AccountScanService) {
         this.apiKeyService = apiKeyService;
-        this.wvwLegendaries = wvwLegendaries;
-        this.gw2LegendaryService = gw2LegendaryService;
+        this.wvwLegendariesIndex = new AmountIndex(wvwLegendaries);
+        this.gw2FailureReplyService = gw2FailureReplyService;
+        this.gw2AccountScanService = gw2AccountScanService;
     }
 
     @Override
-    public void handleSlashCommand(SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook) {
         log.info("/wvw_legendaries command sent by '{}'. Checking for API key...", event.getUser().getName());
         var apiKey = apiKeyService.getApiKeyByUserId(event.getUser().getIdLong());
         if(apiKey.isPresent()) {
             //this user already added an API key
-            event.deferReply().queue(interactionHook -> getAndSendWvwLegendaries(apiKey.get().getKey(), interactionHook));
+            var optionRefresh = event.getOption(OPTION_REFRESH);
+            boolean refresh = optionRefresh != null && optionRefresh.getAsBoolean();
+            var deadline = Deadline.after(event.getTimeCreated().toInstant(), Duration.ofSeconds(commandDeadlineSeconds));
+            return getAndSendWvwLegendaries(apiKey.get().getKey(), refresh, deadline, hook);
         } else {
             log.info("User '{}' has no API key added, and the /wvw_legendaries command can't be started.", event.getUser().getName());
-            event.reply(apiKeyService.getNoApiKeyAddedMessage()).queue();
+            return hook.editOriginal(apiKeyService.getNoApiKeyAddedMessage()).submit();
         }
     }
 
-    private void getAndSendWvwLegendaries(String apiKey, InteractionHook hook) {
-        try {
-            String loading = EmoteUtils.animatedEmote("loading", loadingId);
-            var amounts = AmountUtils.emptyAmounts(wvwLegendaries);
-            hook.editOriginal("Legendás tárgyaid lekérdezése... " + loading).queue();
-            gw2LegendaryService.countLegendaries(amounts, apiKey);
-            String message = getDisplayString(amounts);
-            hook.editOriginal(message).queue();
-        } catch (UnauthorizedException e) {
-            hook.editOriginal(apiKeyService.getNoPermissionsMessage()).queue();
-        } catch (Gw2ApiException e) {
-            String error = EmoteUtils.defaultEmote("no_entry_sign");
-            hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". Ez nem a te hibád, próbáld újra " +
-                    "kicsit később.").queue();
-        }
+    private CompletableFuture<Message> getAndSendWvwLegendaries(String apiKey, boolean refresh, Deadline deadline, InteractionHook hook) {
+        String loading = EmoteUtils.animatedEmote("loading", loadingId);
+        hook.editOriginal("Legendás tárgyaid lekérdezése... " + loading).queue();
+        return gw2AccountScanService.scan(apiKey, wvwLegendariesIndex, refresh, deadline, AccountSource.LEGENDARY_ARMORY).thenCompose(result -> {
+            if(result.isFailed()) {
+                return gw2FailureReplyService.replyToFailure(result.getErrors().get(AccountSource.LEGENDARY_ARMORY), hook);
+            }
+            return hook.editOriginal(getDisplayString(result.getAmounts())).submit();
+        });
     }
 
     /**
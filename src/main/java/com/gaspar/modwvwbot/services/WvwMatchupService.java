@@ -1,16 +1,19 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
 import com.gaspar.modwvwbot.misc.MatchupUtils;
 import com.gaspar.modwvwbot.misc.TimeUtils;
 import com.gaspar.modwvwbot.model.HomeWorld;
 import com.gaspar.modwvwbot.model.matchup.MatchupResult;
+import com.gaspar.modwvwbot.model.matchup.WvwMatchupReport;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupSide;
-import com.gaspar.modwvwbot.services.gw2api.Gw2WvwService;
+import com.gaspar.modwvwbot.model.matchup.WvwSnapshot;
+import com.gaspar.modwvwbot.services.gw2api.Gw2WvwSnapshotService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,14 +23,16 @@ import java.text.DecimalFormat;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * Handles /wvw_matchup and /next_wvw_matchup commands.
+ * Handles /wvw_matchup and /next_wvw_matchup commands. They are deferred, so the home world is looked up
+ * after the command was acknowledged.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
-public class WvwMatchupService implements SlashCommandHandler {
+public class WvwMatchupService implements DeferredSlashCommandHandler {
 
     private static final String WVW_MATCHUP_COMMAND = "/wvw_matchup";
     private static final String NEXT_WVW_MATCHUP_COMMAND = "/next_wvw_matchup";
@@ -36,41 +41,38 @@ public class WvwMatchupService implements SlashCommandHandler {
     private long loadingId;
 
     private final HomeWorldCommandService homeWorldCommandService;
-    private final Gw2WvwService gw2WvwService;
+    private final Gw2WvwSnapshotService gw2WvwSnapshotService;
     private final MatchupUtils matchupUtils;
 
     @Override
-    public void handleSlashCommand(SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook) {
         if(!event.isFromGuild()) {
             log.error("Wvw matchup command was not called from a guild.");
-            return;
+            return hook.editOriginal("A parancsaimat csak egy szerveren belül tudod használni.").submit();
         }
         long guildId = event.getGuild().getIdLong();
         var homeWorld = homeWorldCommandService.getGuildHomeWorld(guildId);
-        if(homeWorld.isPresent()) {
-            //send "thinking" response first
-            event.deferReply().queue(hook -> {
-                try {
-                    LocalDateTime resetTime = matchupUtils.getWvwResetTime();
-                    boolean nextResetIsRelink = matchupUtils.isRelink(resetTime);
-
-                    if(event.getCommandString().startsWith(WVW_MATCHUP_COMMAND)) {
-                        createAndSendWvwMatchupReport(homeWorld.get(), resetTime, nextResetIsRelink, hook);
-                    } else if(event.getCommandString().startsWith(NEXT_WVW_MATCHUP_COMMAND)) {
-                        createAndSendWvwPrediction(homeWorld.get(), resetTime, nextResetIsRelink, hook);
-                    } else {
-                        log.error("Unknown command: {}", event.getCommandString());
-                        throw new RuntimeException("Unknown command: " + event.getCommandString());
-                    }
-                } catch (Gw2ApiException e) {
-                    String error = EmoteUtils.defaultEmote("no_entry_sign");
-                    hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". " +
-                            "Reset után egy-másfél óráig ez várható viselkedés.").queue();
-                }
-            });
-        } else {
+        if(homeWorld.isEmpty()) {
             log.info("Attempted to invoke 'Wvw matchup' command from guild with ID '{}'. No home world is set for this guild, ignoring.", guildId);
-            event.reply("A guild-nek nincs beállított világa! Kérj meg valakit akinek joga van hozzá, hogy ezt tegye meg a **/home_world** paranccsal.").queue();
+            return hook.editOriginal("A guild-nek nincs beállított világa! Kérj meg valakit akinek joga van hozzá, hogy ezt tegye meg a **/home_world** paranccsal.").submit();
+        }
+        try {
+            LocalDateTime resetTime = matchupUtils.getWvwResetTime();
+            boolean nextResetIsRelink = matchupUtils.isRelink(resetTime);
+
+            String command = "/" + event.getName();
+            if(command.equals(WVW_MATCHUP_COMMAND)) {
+                return createAndSendWvwMatchupReport(homeWorld.get(), resetTime, nextResetIsRelink, hook);
+            } else if(command.equals(NEXT_WVW_MATCHUP_COMMAND)) {
+                return createAndSendWvwPrediction(homeWorld.get(), resetTime, nextResetIsRelink, hook);
+            } else {
+                log.error("Unknown command: {}", event.getCommandString());
+                throw new RuntimeException("Unknown command: " + event.getCommandString());
+            }
+        } catch (Gw2ApiException e) {
+            String error = EmoteUtils.defaultEmote("no_entry_sign");
+            return hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". " +
+                    "Reset után egy-másfél óráig ez várható viselkedés.").submit();
         }
     }
 
@@ -80,8 +82,9 @@ public class WvwMatchupService implements SlashCommandHandler {
      * @param resetTime Time of reset.
      * @param isRelink If there is a re-link next reset.
      * @param hook Used to interact with discord message.
+     * @return Future of the sent answer.
      */
-    private void createAndSendWvwMatchupReport(
+    private CompletableFuture<Message> createAndSendWvwMatchupReport(
             HomeWorld homeWorld,
             LocalDateTime resetTime,
             boolean isRelink,
@@ -89,8 +92,9 @@ public class WvwMatchupService implements SlashCommandHandler {
     ) {
         String loadingEmote = EmoteUtils.animatedEmote("loading", loadingId);
         hook.editOriginal("Wvw állapotának lekérdezése... " + loadingEmote).queue();
-        //create report using API
-        var report = gw2WvwService.createMatchupReport(homeWorld.getWorldId());
+        //report from the in memory snapshot
+        WvwSnapshot snapshot = gw2WvwSnapshotService.getSnapshot();
+        var report = getReportOfHomeWorld(snapshot, homeWorld);
         //build message
         var message = new StringBuilder();
         message.append("**Jelentés** - ").append(homeWorld.getWorldName()).append(" jelenlegi matchup-ja:\n");
@@ -106,7 +110,8 @@ public class WvwMatchupService implements SlashCommandHandler {
         message.append(getStringByPlacement(report.getSecondPlace(), homeWorld, 2)).append("\n");
         message.append(getStringByPlacement(report.getThirdPlace(), homeWorld, 3)).append("\n");
         message.append("A jövő heti matchup jóslatáért használd a */next_wvw_matchup* parancsot.");
-        hook.editOriginal(message.toString()).queue();
+        appendStalenessWarning(message, snapshot);
+        return hook.editOriginal(message.toString()).submit();
     }
 
     /**
@@ -189,8 +194,9 @@ public class WvwMatchupService implements SlashCommandHandler {
      * @param resetTime Time of reset.
      * @param isRelink If there is a re-link next reset.
      * @param hook Used to interact with discord message.
+     * @return Future of the sent answer.
      */
-    private void createAndSendWvwPrediction(
+    private CompletableFuture<Message> createAndSendWvwPrediction(
             HomeWorld homeWorld,
             LocalDateTime resetTime,
             boolean isRelink,
@@ -199,15 +205,15 @@ public class WvwMatchupService implements SlashCommandHandler {
         if(isRelink) {
             //in case of re-link, can't predict
             String warning = EmoteUtils.defaultEmote("warning");
-            hook.editOriginal("Figyelem " + warning + ", a következő reset egyben **relink** is. Ilyenkor nem lehet " +
-                    "megjósolni hogy mi fog történni.").queue();
-            return;
+            return hook.editOriginal("Figyelem " + warning + ", a következő reset egyben **relink** is. Ilyenkor nem lehet " +
+                    "megjósolni hogy mi fog történni.").submit();
         }
 
         String loadingEmote = EmoteUtils.animatedEmote("loading", loadingId);
         hook.editOriginal("Wvw állapotának lekérdezése... " + loadingEmote).queue();
-        //current matchup
-        var currentMatchup = gw2WvwService.createMatchupReport(homeWorld.getWorldId());
+        //current matchup, and all other tiers from the same snapshot
+        WvwSnapshot snapshot = gw2WvwSnapshotService.getSnapshot();
+        var currentMatchup = getReportOfHomeWorld(snapshot, homeWorld);
         int currentTier = currentMatchup.getTier();
         log.debug("'{}'-s current tier is '{}'", homeWorld.getWorldName(), currentTier);
         //predict next weeks tier
@@ -219,17 +225,42 @@ public class WvwMatchupService implements SlashCommandHandler {
                 predictedTier,
                 prediction,
                 currentMatchup.getSideOfWorld(homeWorld.getWorldId()),
-                currentMatchup.getPlacingOfWorld(homeWorld.getWorldId())
+                currentMatchup.getPlacingOfWorld(homeWorld.getWorldId()),
+                snapshot
         );
-        String message = getPredictionString(
+        var message = new StringBuilder(getPredictionString(
                 homeWorld,
                 currentTier,
                 predictedTier,
                 prediction,
                 predictedSides,
                 resetTime
-        );
-        hook.editOriginal(message).queue();
+        ));
+        appendStalenessWarning(message, snapshot);
+        return hook.editOriginal(message.toString()).submit();
+    }
+
+    /**
+     * Get the matchup of the home world from the snapshot.
+     * @throws Gw2ApiException If the home world is not in any matchup.
+     */
+    private WvwMatchupReport getReportOfHomeWorld(WvwSnapshot snapshot, HomeWorld homeWorld) throws Gw2ApiException {
+        return snapshot.getReportOfWorld(homeWorld.getWorldId())
+                .orElseThrow(() -> new Gw2ApiException("World " + homeWorld.getWorldId() + " is not in any Wvw matchup!"));
+    }
+
+    /**
+     * If the snapshot is stale because the API is failing, add a warning to the message with the time of the data.
+     */
+    private void appendStalenessWarning(StringBuilder message, WvwSnapshot snapshot) {
+        if(!gw2WvwSnapshotService.isStale(snapshot)) return;
+        LocalDateTime createdAt = LocalDateTime.ofInstant(snapshot.getCreatedAt(), TimeUtils.HU_TIME_ZONE);
+        String createdAtString = TimeUtils.createHungarianTimeString(TimeUtils.getTimeString(createdAt));
+        long minutesAgo = createdAt.until(LocalDateTime.now(TimeUtils.HU_TIME_ZONE), ChronoUnit.MINUTES);
+        String warning = EmoteUtils.defaultEmote("warning");
+        message.append("\n\nFigyelem ").append(warning).append(", a Gw2 API most nem válaszol, ezért a legutóbbi ismert ")
+                .append("állapotot mutatom: ").append(createdAtString).append(" (")
+                .append(TimeUtils.createHungarianDurationStringFromMinutes(minutesAgo)).append(" ezelőtt).");
     }
 
     /**
@@ -310,7 +341,7 @@ public class WvwMatchupService implements SlashCommandHandler {
 
     @Override
     public String commandName() {
-        return null;
+        return null; //handles multiple commands
     }
 
     @Override
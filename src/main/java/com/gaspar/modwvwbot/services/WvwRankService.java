@@ -1,29 +1,35 @@
 package com.gaspar.modwvwbot.services;
 
-import com.gaspar.modwvwbot.SlashCommandHandler;
-import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.DeferredSlashCommandHandler;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
 import com.gaspar.modwvwbot.misc.EmoteUtils;
+import com.gaspar.modwvwbot.misc.FutureUtils;
 import com.gaspar.modwvwbot.model.gw2api.Gw2Account;
 import com.gaspar.modwvwbot.model.gw2api.HomeWorldResponse;
-import com.gaspar.modwvwbot.model.gw2api.WvwRank;
+import com.gaspar.modwvwbot.model.WvwRankTable;
 import com.gaspar.modwvwbot.services.gw2api.Gw2AccountService;
+import com.gaspar.modwvwbot.services.gw2api.Gw2RankCatalogService;
 import com.gaspar.modwvwbot.services.gw2api.Gw2WorldService;
-import com.gaspar.modwvwbot.services.gw2api.Gw2WvwService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 @Service
 @Slf4j
 @RequiredArgsConstructor
-public class WvwRankService implements SlashCommandHandler {
+public class WvwRankService implements DeferredSlashCommandHandler {
 
     private static final String WVW_RANK_COMMAND = "/wvw_rank";
 
+    private static final String OPTION_REFRESH = "refresh";
+
     @Value("${com.gaspar.modwvwbot.emote_ids.loading}")
     private long loadingId;
 
@@ -31,47 +37,47 @@ public class WvwRankService implements SlashCommandHandler {
     private long commanderEmoteId;
 
     private final ApiKeyService apiKeyService;
+    private final Gw2FailureReplyService gw2FailureReplyService;
     private final Gw2AccountService gw2AccountService;
     private final Gw2WorldService gw2WorldService;
-    private final Gw2WvwService gw2WvwService;
+    private final Gw2RankCatalogService gw2RankCatalogService;
 
     @Override
-    public void handleSlashCommand(SlashCommandInteractionEvent event) {
+    public CompletableFuture<?> handleDeferredSlashCommand(SlashCommandInteractionEvent event, InteractionHook hook) {
         log.info("/wvw_rank command sent by '{}'. Checking for API key...", event.getUser().getName());
         var apiKey = apiKeyService.getApiKeyByUserId(event.getUser().getIdLong());
         if(apiKey.isPresent()) {
             //this user already added an API key
-            event.deferReply().queue(interactionHook -> getAndSendWvwRank(apiKey.get().getKey(), interactionHook, event.getUser().getName()));
+            var optionRefresh = event.getOption(OPTION_REFRESH);
+            boolean refresh = optionRefresh != null && optionRefresh.getAsBoolean();
+            return getAndSendWvwRank(apiKey.get().getKey(), refresh, hook, event.getUser().getName());
         } else {
             log.info("User '{}' has no API key added, and the /wvw_rank command can't be started.", event.getUser().getName());
-            event.reply(apiKeyService.getNoApiKeyAddedMessage()).queue();
+            return hook.editOriginal(apiKeyService.getNoApiKeyAddedMessage()).submit();
         }
     }
 
-    private void getAndSendWvwRank(String apiKey, InteractionHook hook, String userName) {
-        try {
-            String loading = EmoteUtils.animatedEmote("loading", loadingId);
-            hook.editOriginal("WvW profilod olvasása... " + loading).queue();
-            Gw2Account account = gw2AccountService.fetchGw2User(apiKey);
+    private CompletableFuture<Message> getAndSendWvwRank(String apiKey, boolean refresh, InteractionHook hook, String userName) {
+        String loading = EmoteUtils.animatedEmote("loading", loadingId);
+        hook.editOriginal("WvW profilod olvasása... " + loading).queue();
+        return gw2AccountService.fetchGw2UserAsync(apiKey, refresh).thenCompose(account -> {
             if(account.getWvwLevel() == null) {
                 log.info("User '{}'-s API key has no 'progression' permission to get WvW rank.", userName);
                 throw new UnauthorizedException("No permission to read WvW rank.");
             }
-            //resolve world
-            HomeWorldResponse homeWorldResponse = gw2WorldService.fetchHomeWorldById(account.getWorldId());
-            //resolve wvw rank
-            var ranks = gw2WvwService.getWvwRanks();
-            String rankTitle = findRankTitle(account.getWvwLevel(), ranks);
-            //create and send message
-            String message = getResponseMessage(account, rankTitle, homeWorldResponse.getName());
-            hook.editOriginal(message).queue();
-        } catch (UnauthorizedException e) {
-            hook.editOriginal(apiKeyService.getNoPermissionsMessage()).queue();
-        } catch (Gw2ApiException e) {
-            String error = EmoteUtils.defaultEmote("no_entry_sign");
-            hook.editOriginal("A Gw2 API hibás választ adott, vagy nem válaszolt " + error + ". Ez nem a te hibád, próbáld újra " +
-                    "kicsit később.").queue();
-        }
+            //resolve world and wvw rank at the same time
+            CompletableFuture<HomeWorldResponse> homeWorld = gw2WorldService.fetchHomeWorldByIdAsync(account.getWorldId());
+            CompletableFuture<WvwRankTable> ranks = gw2RankCatalogService.getRankTableAsync();
+            return homeWorld.thenCombine(ranks, (homeWorldResponse, rankTable) -> {
+                String rankTitle = rankTable.findTitle(account.getWvwLevel());
+                return getResponseMessage(account, rankTitle, homeWorldResponse.getName());
+            });
+        }).handle((message, error) -> {
+            if(error != null) {
+                return gw2FailureReplyService.replyToFailure(FutureUtils.unwrap(error), hook);
+            }
+            return hook.editOriginal(message).submit();
+        }).thenCompose(Function.identity());
     }
 
     /**
@@ -92,21 +98,6 @@ public class WvwRankService implements SlashCommandHandler {
         return message.toString();
     }
 
-    /**
-     * Find the user's wvw title from his rank.
-     * @param userRank User wvw level.
-     * @param ranks All ranks.
-     */
-    private String findRankTitle(int userRank, WvwRank[] ranks) {
-        for(int i = ranks.length - 1; i >= 0; i--) {
-            WvwRank rank = ranks[i];
-            if(userRank >= rank.getMinRank()) {
-                return rank.getTitle();
-            }
-        }
-        return "Invader"; //should not get here
-    }
-
     @Override
     public String commandName() {
         return WVW_RANK_COMMAND;
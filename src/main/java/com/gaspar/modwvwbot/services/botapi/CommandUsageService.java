@@ -5,18 +5,27 @@ import com.gaspar.modwvwbot.controllers.dto.GuildStatisticResponse;
 import com.gaspar.modwvwbot.controllers.dto.MonthlyCommandUsageResponse;
 import com.gaspar.modwvwbot.controllers.dto.UsageResponse;
 import com.gaspar.modwvwbot.exception.NotFoundException;
-import com.gaspar.modwvwbot.model.CommandUsageStatistic;
+import com.gaspar.modwvwbot.model.CommandUsageKey;
+import com.gaspar.modwvwbot.model.GuildCommandUsage;
 import com.gaspar.modwvwbot.repository.CommandUsageRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.Month;
-import java.time.Year;
+import javax.annotation.PreDestroy;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Handles command usage related operations.
@@ -30,33 +39,46 @@ public class CommandUsageService {
     private final DiscordGuildService discordGuildService;
 
     /**
-     * Save that a command was used.
+     * Usages that are not saved yet. The counters are striped, so commands don't contend on them.
+     */
+    private final Map<CommandUsageKey, LongAdder> pendingUsages = new ConcurrentHashMap<>();
+
+    /**
+     * Save that a command was used. The usage is only counted in memory, and saved later by {@link #flushCommandUsages()}.
      * @param guildId Discord ID of the source guild. Can also be {@link com.gaspar.modwvwbot.model.CommandUsageStatistic#PRIVATE_MESSAGE_SOURCE}
      *                if this command came from a private message.
      * @param commandName The name of the command such as '/wvw_rank'.
      */
     public void saveCommandUsage(long guildId, String commandName) {
-        int year = Year.now().getValue();
-        Month month = LocalDateTime.now().getMonth();
-
-        var optional = commandUsageRepository.findByGuildIdAndCommandNameAndYearAndMonth(guildId, commandName, year, month);
-        if(optional.isPresent()) {
-            //command already used in this guild this month, increment
-            var usage = optional.get();
-            usage.increment();
-            commandUsageRepository.save(usage);
-            log.debug("Incremented command usage of '{}' in guild with ID '{}'", commandName, guildId);
-        } else {
-            //used first time this guild this month
-            var usage = CommandUsageStatistic.builder()
-                    .guildId(guildId)
-                    .commandName(commandName)
-                    .year(year)
-                    .month(month)
-                    .count(1)
-                    .build();
-            commandUsageRepository.save(usage);
-            log.info("Command '{}' used for the first time this month in guild with ID '{}'", commandName, guildId);
+        LocalDate today = LocalDate.now();
+        var key = new CommandUsageKey(guildId, commandName, today.getYear(), today.getMonth());
+        pendingUsages.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Save the usages counted since the last flush, with one batched upsert. If it fails, the
+     * usages are kept and saved with the next flush. Also runs when the bot shuts down.
+     */
+    @Scheduled(fixedDelayString = "${com.gaspar.modwvwbot.command_usage_flush_seconds}", timeUnit = TimeUnit.SECONDS)
+    @PreDestroy
+    public synchronized void flushCommandUsages() {
+        LocalDate today = LocalDate.now();
+        Map<CommandUsageKey, Long> increments = new HashMap<>();
+        pendingUsages.forEach((key, counter) -> {
+            long count = counter.sumThenReset();
+            if(count > 0) increments.put(key, count);
+            //no more usages are counted for past months
+            if(key.getYear() != today.getYear() || key.getMonth() != today.getMonth()) {
+                pendingUsages.remove(key, counter);
+            }
+        });
+        if(increments.isEmpty()) return;
+        try {
+            commandUsageRepository.incrementCounts(increments);
+            log.debug("Saved command usages: {}", increments);
+        } catch (DataAccessException e) {
+            log.warn("Failed to save {} command usage counts, retrying with the next flush.", increments.size(), e);
+            increments.forEach((key, count) -> pendingUsages.computeIfAbsent(key, k -> new LongAdder()).add(count));
         }
     }
 
@@ -65,94 +87,55 @@ public class CommandUsageService {
             .thenComparing(response -> response.getMonth().getValue()).reversed();
 
     /**
-     * Get command usage statistics in an API ready format from one guild.
+     * Get command usage statistics in an API ready format from one guild. The counts are summed in
+     * the database, here they are only grouped by year and month.
      * @throws NotFoundException If no guild was found with the ID that the bot is a member of.
      */
     public UsageResponse<GuildStatisticResponse> getStatisticsFromGuild(long guildId) throws NotFoundException {
         if(discordGuildService.isInGuild(guildId)) {
-            //each is a year+month+commandName+guild row
-            List<CommandUsageStatistic> guildStats = commandUsageRepository.findByGuildId(guildId);
+            //each is a year+month+commandName sum
+            List<GuildCommandUsage> guildUsages = commandUsageRepository.sumByGuildId(guildId);
 
             //each is a year+month+command list combo
-            List<GuildStatisticResponse> responses = new ArrayList<>();
-
-            for(var guildStat: guildStats) {
-                addGuildStatistic(responses, guildStat);
+            Map<YearMonth, GuildStatisticResponse> responses = new HashMap<>();
+            for(var usage: guildUsages) {
+                var response = responses.computeIfAbsent(YearMonth.of(usage.getYear(), usage.getMonth()), yearMonth -> {
+                    var newResponse = new GuildStatisticResponse();
+                    newResponse.setYear(yearMonth.getYear());
+                    newResponse.setMonth(yearMonth.getMonth());
+                    newResponse.setCommands(new ArrayList<>());
+                    return newResponse;
+                });
+                response.getCommands().add(new CommandUsageResponse(usage.getCommandName(), Math.toIntExact(usage.getCount())));
             }
 
             //sort by year desc and then month desc
-            responses.sort(guildResponseComparator);
+            List<GuildStatisticResponse> sortedResponses = new ArrayList<>(responses.values());
+            sortedResponses.sort(guildResponseComparator);
 
-            return new UsageResponse<>(responses);
+            return new UsageResponse<>(sortedResponses);
         } else {
             throw new NotFoundException("The bot is not part of any guild with discord ID '" + guildId + "'!");
         }
     }
 
-    /**
-     * Add statistic to responses list (either as new element, or appending it to an existing element).
-     */
-    private void addGuildStatistic(List<GuildStatisticResponse> responses, CommandUsageStatistic statistic) {
-        for(GuildStatisticResponse response: responses) {
-            //is this response the same year+month as the statistic?
-            if(sameYearAndMonth(response, statistic)) {
-                //yes, append to this
-                response.appendStatistic(statistic);
-                return;
-            }
-        }
-        //there was no response with this year+month, add a new one
-        var response = new GuildStatisticResponse();
-        response.setYear(statistic.getYear());
-        response.setMonth(statistic.getMonth());
-        var commandList = new ArrayList<CommandUsageResponse>();
-        commandList.add(new CommandUsageResponse(statistic.getCommandName(), statistic.getCount()));
-        response.setCommands(commandList);
-        responses.add(response);
-    }
-
-    public boolean sameYearAndMonth(GuildStatisticResponse response, CommandUsageStatistic statistic) {
-        return response.getYear() == statistic.getYear() && response.getMonth() == statistic.getMonth();
-    }
-
     private static final Comparator<MonthlyCommandUsageResponse> commandResponseComparator
             = Comparator.comparing(MonthlyCommandUsageResponse::getYear).reversed()
             .thenComparing(response -> response.getMonth().getValue()).reversed();
 
     /**
-     * Get all statistics of a specified command.
+     * Get all statistics of a specified command. The counts are summed by year and month in the database.
      * @param commandName Command name WITHOUT slash at the start.
      */
     public UsageResponse<MonthlyCommandUsageResponse> getCommandStatistics(String commandName) {
         commandName = "/" + commandName;
-        List<CommandUsageStatistic> statistics = commandUsageRepository.findByCommandName(commandName);
-
         List<MonthlyCommandUsageResponse> responses = new ArrayList<>();
-
-        for(var statistic: statistics) {
-            addCommandStatistic(responses, statistic);
+        for(var usage: commandUsageRepository.sumByCommandName(commandName)) {
+            responses.add(new MonthlyCommandUsageResponse(usage.getYear(), usage.getMonth(), Math.toIntExact(usage.getCount())));
         }
-
+        //the month is saved as text, so it can't be sorted in the query
         responses.sort(commandResponseComparator);
         return new UsageResponse<>(responses);
     }
 
-    public boolean sameYearAndMonth(MonthlyCommandUsageResponse response, CommandUsageStatistic statistic) {
-        return response.getYear() == statistic.getYear() && response.getMonth() == statistic.getMonth();
-    }
-
-    private void addCommandStatistic(List<MonthlyCommandUsageResponse> responses, CommandUsageStatistic statistic) {
-        for(MonthlyCommandUsageResponse response: responses) {
-            //is it in the same year+month?
-            if(sameYearAndMonth(response, statistic)) {
-                //yes, add it here
-                response.increaseWith(statistic.getCount());
-                return;
-            }
-        }
-        //add new year+month for it
-        var commandResponse = new MonthlyCommandUsageResponse(statistic.getYear(), statistic.getMonth(), statistic.getCount());
-        responses.add(commandResponse);
-    }
-
 }
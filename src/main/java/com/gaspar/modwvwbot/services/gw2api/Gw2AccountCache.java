@@ -0,0 +1,146 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Short-lived cache of the responses of the account endpoints (such as /v2/account, the bank, the wallet or the
+ * characters), per API key. Commands that are used one after the other (for example /wvw_items and then
+ * /wvw_currencies) don't fetch the same data again. The Gw2 API only refreshes account data every few minutes,
+ * so the time to live matches that.
+ * <p>
+ * The response bodies are cached as they arrived, and are read again by every command, so each command can count
+ * what it's interested in. The API keys are not stored, only their hashes. The cache is bounded by the total size
+ * of the bodies.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2AccountCache {
+
+    @Value("${com.gaspar.modwvwbot.account_cache.time_to_live_minutes}")
+    private int timeToLiveMinutes;
+
+    @Value("${com.gaspar.modwvwbot.account_cache.max_megabytes}")
+    private long maxMegabytes;
+
+    private final Gw2ApiGateway gw2ApiGateway;
+
+    /**
+     * Same settings as the rest template, so the bodies can be bound to the same response objects.
+     */
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Cache<AccountCacheKey, byte[]> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxMegabytes * 1024 * 1024)
+                .weigher((AccountCacheKey key, byte[] body) -> body.length)
+                .expireAfterWrite(Duration.ofMinutes(timeToLiveMinutes))
+                .build();
+        log.info("Account data is cached for {} minutes, at most {} MB.", timeToLiveMinutes, maxMegabytes);
+    }
+
+    /**
+     * Read the response of an account endpoint. It's taken from the cache, or fetched from the API and cached.
+     * @param apiKey API key of the account, which is in the URL.
+     * @param url URL relative to the API root, with the API key.
+     * @param refresh If true, the response is fetched from the API even if it's cached.
+     * @param deadline Deadline of the request, if it must be sent.
+     * @param reader Reads the response body. Objects can be bound with {@link JsonParser#readValueAs(Class)}.
+     * @return Future of the result of the reader. It fails with {@link Gw2ApiException} or {@link UnauthorizedException}.
+     */
+    public <T> CompletableFuture<T> read(
+            String apiKey,
+            Gw2Endpoint endpoint,
+            String url,
+            boolean refresh,
+            Deadline deadline,
+            JsonStreamReader<T> reader
+    ) {
+        var key = new AccountCacheKey(hashApiKey(apiKey), endpoint, url.replace(apiKey, ""));
+        byte[] cachedBody = refresh ? null : cache.getIfPresent(key);
+        if(cachedBody != null) {
+            log.debug("Response of endpoint '{}' was found in the account cache.", endpoint);
+            return CompletableFuture.completedFuture(cachedBody).thenApply(body -> readBody(key, body, reader));
+        }
+        return gw2ApiGateway.getBodyAsync(endpoint, url, deadline).thenApply(body -> {
+            cache.put(key, body);
+            return readBody(key, body, reader);
+        });
+    }
+
+    /**
+     * Remove all cached data of an API key. Used when a user changes their key, which could mean a different account.
+     */
+    public void evict(@Nullable String apiKey) {
+        if(apiKey == null) return;
+        String keyHash = hashApiKey(apiKey);
+        cache.asMap().keySet().removeIf(key -> key.keyHash.equals(keyHash));
+        log.debug("Evicted cached account data of an API key.");
+    }
+
+    private <T> T readBody(AccountCacheKey key, byte[] body, JsonStreamReader<T> reader) {
+        try(JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            return reader.read(parser);
+        } catch (IOException e) {
+            //it would fail the same way every time
+            cache.invalidate(key);
+            throw new Gw2ApiException(e);
+        }
+    }
+
+    private static String hashApiKey(String apiKey) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            //every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a Gw2 API response body from a JSON token stream.
+     */
+    @FunctionalInterface
+    public interface JsonStreamReader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * The resource is the URL without the API key, for example the name of the character.
+     */
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    private static class AccountCacheKey {
+        private final String keyHash;
+        private final Gw2Endpoint endpoint;
+        private final String resource;
+    }
+}
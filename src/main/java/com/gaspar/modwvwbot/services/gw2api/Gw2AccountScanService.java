@@ -0,0 +1,118 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
+import com.gaspar.modwvwbot.misc.AmountCounter;
+import com.gaspar.modwvwbot.misc.AmountIndex;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.AccountScanResult;
+import com.gaspar.modwvwbot.model.AccountSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counts items and currencies of interest in several places of a Gw2 account at the same time. Every
+ * source is requested in parallel on the Gw2 API executor, and counted into its own list. The lists are
+ * merged when all sources finished. A failed source does not fail the scan, its error is returned in
+ * the result, next to the counts of the other sources.
+ * <p>
+ * The responses of the sources are cached for a few minutes, see {@link Gw2AccountCache}. Each scan counts its
+ * items of interest from them again, so different commands can share the responses.
+ * <p>
+ * The scan has a {@link Deadline}: sources that did not finish before it are reported as failed with
+ * {@link Gw2DeadlineExceededException}, so the result can be returned with what was counted so far. Sources that
+ * are {@link AccountSource#isCountedIncrementally() counted incrementally} are reported as partial instead, and
+ * what they counted before the deadline is kept.
+ * @see AccountScanResult
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2AccountScanService {
+
+    private final Gw2InventoryService gw2InventoryService;
+    private final Gw2BankService gw2BankService;
+    private final Gw2StorageService gw2StorageService;
+    private final Gw2WalletService gw2WalletService;
+    private final Gw2LegendaryService gw2LegendaryService;
+
+    /**
+     * Scan some sources of an account.
+     * @param apiKey API key of the account.
+     * @param tracked Index of the items or currencies of interest.
+     * @param refresh If true, the {@link Gw2AccountCache} is skipped and every source is fetched again.
+     * @param deadline Sources that are not counted until this are abandoned.
+     * @param sources Places to count in.
+     * @return Future of the result, it never fails. Errors of the sources are in the result.
+     */
+    public CompletableFuture<AccountScanResult> scan(String apiKey, AmountIndex tracked, boolean refresh, Deadline deadline, AccountSource... sources) {
+        Map<AccountSource, AmountCounter> sourceCounters = new EnumMap<>(AccountSource.class);
+        Map<AccountSource, Duration> timings = new EnumMap<>(AccountSource.class);
+        Map<AccountSource, Throwable> errors = new EnumMap<>(AccountSource.class);
+        Set<AccountSource> partialSources = EnumSet.noneOf(AccountSource.class);
+        CompletableFuture<?>[] sourceScans = new CompletableFuture[sources.length];
+        for(int i = 0; i < sources.length; i++) {
+            AccountSource source = sources[i];
+            var counter = tracked.newCounter();
+            sourceCounters.put(source, counter);
+            long start = System.nanoTime();
+            var sourceScan = scanSource(source, apiKey, counter, refresh, deadline);
+            sourceScans[i] = FutureUtils.failAtDeadline(sourceScan, deadline, "Scanning " + source).whenComplete((ignored, error) -> {
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                //sources complete on different threads
+                synchronized (timings) {
+                    timings.put(source, elapsed);
+                    if(error != null) {
+                        Throwable cause = FutureUtils.unwrap(error);
+                        if(cause instanceof Gw2DeadlineExceededException && source.isCountedIncrementally()) {
+                            partialSources.add(source);
+                        } else {
+                            errors.put(source, cause);
+                        }
+                    }
+                }
+            });
+        }
+        return CompletableFuture.allOf(sourceScans)
+                .handle((ignored, error) -> {
+                    synchronized (timings) {
+                        var merged = tracked.newCounter();
+                        sourceCounters.forEach((source, counted) -> {
+                            if(errors.containsKey(source)) return;
+                            //a partly counted source may still be counting, after the deadline
+                            synchronized (counted) {
+                                merged.addAll(counted);
+                            }
+                        });
+                        log.info("Account scan finished, timings: {}, failed sources: {}, partial sources: {}",
+                                timings, errors.keySet(), partialSources);
+                        return new AccountScanResult(merged.toAmounts(), Map.copyOf(timings), Map.copyOf(errors), Set.copyOf(partialSources));
+                    }
+                });
+    }
+
+    private CompletableFuture<Void> scanSource(AccountSource source, String apiKey, AmountCounter counter, boolean refresh, Deadline deadline) {
+        switch (source) {
+            case INVENTORIES:
+                return gw2InventoryService.countItemsInInventoriesAsync(apiKey, counter, refresh, deadline);
+            case BANK:
+                return gw2BankService.countItemsInBankAsync(apiKey, counter, refresh, deadline);
+            case MATERIAL_STORAGE:
+                return gw2StorageService.countItemsInStorageAsync(apiKey, counter, refresh, deadline);
+            case WALLET:
+                return gw2WalletService.countCurrenciesInWalletAsync(apiKey, counter, refresh, deadline);
+            case LEGENDARY_ARMORY:
+                return gw2LegendaryService.countLegendariesAsync(counter, apiKey, refresh, deadline);
+            default:
+                throw new IllegalArgumentException("Unknown account source: " + source);
+        }
+    }
+}
@@ -2,12 +2,14 @@ package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.Deadline;
 import com.gaspar.modwvwbot.model.gw2api.Gw2Account;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Sends request to API to protected endpoint, to check if
@@ -15,13 +17,11 @@ import org.springframework.web.client.RestTemplate;
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2AccountService {
 
-    private final RestTemplate restTemplate;
-
-    public Gw2AccountService(@Qualifier("gw2api") RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final Gw2ApiGateway gw2ApiGateway;
+    private final Gw2AccountCache gw2AccountCache;
 
     /**
      * Get username of player.
@@ -34,13 +34,17 @@ public class Gw2AccountService {
         String getUserEndpoint = "/v2/account";
         log.debug("Fetching Gw2 account data from: " + getUserEndpoint);
         getUserEndpoint += "?access_token=" + apiKey;
-        try {
-            var response = restTemplate.getForEntity(getUserEndpoint, Gw2Account.class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-            return response.getBody();
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+        return gw2ApiGateway.get(Gw2Endpoint.ACCOUNT, getUserEndpoint, Gw2Account.class);
+    }
+
+    /**
+     * Asynchronous variant of {@link #fetchGw2User(String)}. The response is cached, see {@link Gw2AccountCache}.
+     * The future fails with {@link Gw2ApiException} or {@link UnauthorizedException}.
+     * @param refresh If true, the cached response is not used.
+     */
+    public CompletableFuture<Gw2Account> fetchGw2UserAsync(String apiKey, boolean refresh) {
+        String getUserEndpoint = "/v2/account?access_token=" + apiKey;
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.ACCOUNT, getUserEndpoint, refresh, Deadline.NONE,
+                parser -> parser.readValueAs(Gw2Account.class));
     }
 }
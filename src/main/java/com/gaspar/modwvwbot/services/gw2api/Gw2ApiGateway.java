@@ -0,0 +1,442 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.controllers.dto.Gw2CacheStatisticsResponse;
+import com.gaspar.modwvwbot.exception.Gw2ApiClientException;
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * All requests to the Gw2 API go through this gateway. Responses of endpoints that have a
+ * time to live (see {@link Gw2Endpoint}) are cached, so the same data is not fetched again and
+ * again when many guilds use the same commands. Each endpoint has its own cache, which is
+ * bounded in size and evicts the least frequently/recently used entries when full.
+ * <p>
+ * Identical requests that are sent at the same time are coalesced: only the first one goes to
+ * the API, the others wait for it and get the same response (or exception).
+ * <p>
+ * Requests can be sent asynchronously with {@link #getAsync(Gw2Endpoint, String, Class)}, in this
+ * case they are executed on a dedicated thread pool.
+ * <p>
+ * Requests that actually go to the API must pass the {@link Gw2CircuitBreaker} of their endpoint family,
+ * and get a token from the {@link Gw2RateLimiter}.
+ * <p>
+ * Asynchronous requests can have a {@link Deadline}: they are not sent after it passed, don't wait for the rate
+ * limiter longer than it, and the caller stops waiting for the response when it passes. The HTTP exchange of a request
+ * is aborted when the deadline it was sent with passes (see {@link Gw2RequestAborter}), so callers that joined the same
+ * request in flight also get {@link Gw2DeadlineExceededException} then. Slow asynchronous
+ * requests of some endpoints are hedged, see {@link Gw2HedgingPolicy}.
+ */
+@Service
+@Slf4j
+public class Gw2ApiGateway {
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_cache_max_entries}")
+    private long maxEntriesPerEndpoint;
+
+    private final RestTemplate restTemplate;
+    private final Executor gw2ApiExecutor;
+    private final Gw2RateLimiter gw2RateLimiter;
+    private final Gw2CircuitBreaker gw2CircuitBreaker;
+    private final Gw2ApiMetrics gw2ApiMetrics;
+    private final Gw2HedgingPolicy gw2HedgingPolicy;
+    private final Gw2RequestAborter gw2RequestAborter;
+
+    /**
+     * Caches of the cached endpoints. The keys are the request URLs.
+     */
+    private final Map<Gw2Endpoint, Cache<String, Object>> caches = new EnumMap<>(Gw2Endpoint.class);
+
+    /**
+     * Requests that are currently waiting for the API to respond. Keys are made
+     * from the endpoint and the URL, see {@link #inFlightKey(Gw2Endpoint, String)}.
+     */
+    private final Map<String, CompletableFuture<Object>> inFlightRequests = new ConcurrentHashMap<>();
+
+    public Gw2ApiGateway(
+            @Qualifier("gw2api") RestTemplate restTemplate,
+            @Qualifier("gw2apiExecutor") Executor gw2ApiExecutor,
+            Gw2RateLimiter gw2RateLimiter,
+            Gw2CircuitBreaker gw2CircuitBreaker,
+            Gw2ApiMetrics gw2ApiMetrics,
+            Gw2HedgingPolicy gw2HedgingPolicy,
+            Gw2RequestAborter gw2RequestAborter) {
+        this.restTemplate = restTemplate;
+        this.gw2ApiExecutor = gw2ApiExecutor;
+        this.gw2RateLimiter = gw2RateLimiter;
+        this.gw2CircuitBreaker = gw2CircuitBreaker;
+        this.gw2ApiMetrics = gw2ApiMetrics;
+        this.gw2HedgingPolicy = gw2HedgingPolicy;
+        this.gw2RequestAborter = gw2RequestAborter;
+    }
+
+    @PostConstruct
+    public void init() {
+        for(Gw2Endpoint endpoint: Gw2Endpoint.values()) {
+            if(endpoint.isCached()) {
+                Cache<String, Object> cache = Caffeine.newBuilder()
+                        .maximumSize(maxEntriesPerEndpoint)
+                        .expireAfterWrite(endpoint.getTimeToLive())
+                        .recordStats()
+                        .build();
+                caches.put(endpoint, cache);
+                log.info("Gw2 API responses of endpoint '{}' are cached for {}.", endpoint, endpoint.getTimeToLive());
+            }
+        }
+    }
+
+    /**
+     * Send a GET request to the Gw2 API, or get the response from the cache.
+     * @param endpoint Logical endpoint of the request.
+     * @param url URL relative to the API root, with all query parameters.
+     * @param responseType Type of the response body.
+     * @return The response body, never null.
+     * @throws Gw2ApiException If the API failed to respond.
+     * @throws UnauthorizedException If the API key has no permissions.
+     */
+    public <T> T get(Gw2Endpoint endpoint, String url, Class<T> responseType) throws Gw2ApiException, UnauthorizedException {
+        return get(endpoint, url, responseType, Gw2RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Send a GET request to the Gw2 API, or get the response from the cache.
+     * @param priority Rate limiter lane of the request, in case it must be sent to the API.
+     * @see #get(Gw2Endpoint, String, Class)
+     */
+    public <T> T get(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Gw2RequestPriority priority
+    ) throws Gw2ApiException, UnauthorizedException {
+        if(gw2HedgingPolicy.getHedgeDelay(endpoint, priority).isPresent()) {
+            //a request sent on this thread can't be hedged
+            return FutureUtils.join(getAsync(endpoint, url, responseType, priority, Deadline.NONE));
+        }
+        Object cachedResponse = getCachedResponse(endpoint, url);
+        if(cachedResponse != null) {
+            return responseType.cast(cachedResponse);
+        }
+        var request = new CompletableFuture<Object>();
+        var inFlightRequest = inFlightRequests.putIfAbsent(inFlightKey(endpoint, url), request);
+        if(inFlightRequest != null) {
+            log.debug("Same request to endpoint '{}' is already in flight, waiting for it.", endpoint);
+            return responseType.cast(FutureUtils.join(inFlightRequest));
+        }
+        //send on this thread
+        sendRequest(endpoint, url, responseType, priority, Deadline.NONE, request);
+        return responseType.cast(FutureUtils.join(request));
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(Gw2Endpoint, String, Class)}. The request is sent on the Gw2 API
+     * executor, the calling thread is not blocked.
+     * @return Future of the response body. It fails with {@link Gw2ApiException} or {@link UnauthorizedException}.
+     */
+    public <T> CompletableFuture<T> getAsync(Gw2Endpoint endpoint, String url, Class<T> responseType) {
+        return getAsync(endpoint, url, responseType, Gw2RequestPriority.INTERACTIVE);
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(Gw2Endpoint, String, Class, Gw2RequestPriority)}.
+     */
+    public <T> CompletableFuture<T> getAsync(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Gw2RequestPriority priority
+    ) {
+        return getAsync(endpoint, url, responseType, priority, Deadline.NONE);
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(Gw2Endpoint, String, Class)}, made for a command that has a deadline.
+     * @return Future of the response body. It fails with {@link Gw2DeadlineExceededException} if the deadline
+     * passed before the response arrived.
+     */
+    public <T> CompletableFuture<T> getAsync(Gw2Endpoint endpoint, String url, Class<T> responseType, Deadline deadline) {
+        return getAsync(endpoint, url, responseType, Gw2RequestPriority.INTERACTIVE, deadline);
+    }
+
+    /**
+     * Asynchronous request with a priority and a deadline. A request that is already in flight is joined, even
+     * if it was sent with a different deadline, but this caller only waits for it until its own deadline.
+     */
+    private <T> CompletableFuture<T> getAsync(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Gw2RequestPriority priority,
+            Deadline deadline
+    ) {
+        Object cachedResponse = getCachedResponse(endpoint, url);
+        if(cachedResponse != null) {
+            return CompletableFuture.completedFuture(responseType.cast(cachedResponse));
+        }
+        var request = new CompletableFuture<Object>();
+        var inFlightRequest = inFlightRequests.putIfAbsent(inFlightKey(endpoint, url), request);
+        if(inFlightRequest != null) {
+            log.debug("Same request to endpoint '{}' is already in flight, joining it.", endpoint);
+            return FutureUtils.withDeadline(inFlightRequest.thenApply(responseType::cast), deadline, "Request to '" + endpoint + "'");
+        }
+        try {
+            gw2ApiExecutor.execute(() -> sendRequest(endpoint, url, responseType, priority, deadline, request));
+            gw2HedgingPolicy.getHedgeDelay(endpoint, priority)
+                    .filter(delay -> delay.compareTo(deadline.remaining()) < 0)
+                    .ifPresent(delay -> scheduleHedge(endpoint, url, responseType, deadline, request, delay));
+        } catch (RejectedExecutionException e) {
+            log.warn("Gw2 API executor is full, request to endpoint '{}' was rejected.", endpoint);
+            inFlightRequests.remove(inFlightKey(endpoint, url), request);
+            request.completeExceptionally(new Gw2ApiException(e));
+        }
+        return FutureUtils.withDeadline(request.thenApply(responseType::cast), deadline, "Request to '" + endpoint + "'");
+    }
+
+    /**
+     * Get the cached response of a request, if the endpoint is cached and there is one.
+     */
+    @Nullable
+    private Object getCachedResponse(Gw2Endpoint endpoint, String url) {
+        var cache = caches.get(endpoint);
+        if(cache == null) return null;
+        Object cachedResponse = cache.getIfPresent(url);
+        if(cachedResponse != null) {
+            log.debug("Response of endpoint '{}' was found in the cache.", endpoint);
+        }
+        return cachedResponse;
+    }
+
+    /**
+     * Send a request which was registered as in flight, and complete it with the response. The response is placed
+     * into the cache (if the endpoint is cached) before the callers waiting for it are released.
+     * @param request Completed with the response or exception. Never throws.
+     */
+    private <T> void sendRequest(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Gw2RequestPriority priority,
+            Deadline deadline,
+            CompletableFuture<Object> request
+    ) {
+        try {
+            T response = fetch(endpoint, url, responseType, priority, deadline);
+            var cache = caches.get(endpoint);
+            if(cache != null) {
+                cache.put(url, response);
+            }
+            request.complete(response);
+        } catch (RuntimeException e) {
+            request.completeExceptionally(e);
+        } finally {
+            inFlightRequests.remove(inFlightKey(endpoint, url), request);
+        }
+    }
+
+    /**
+     * Send the same request again after a delay, if the original has not responded by then. The first successful
+     * response completes the request. The original request always completes it eventually, so a failed hedge
+     * is ignored. The slower request is not aborted (it is already on the wire), its response is dropped.
+     */
+    private <T> void scheduleHedge(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Deadline deadline,
+            CompletableFuture<Object> request,
+            Duration delay
+    ) {
+        var delayedExecutor = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS, gw2ApiExecutor);
+        delayedExecutor.execute(() -> {
+            if(request.isDone()) return;
+            if(!gw2RateLimiter.estimateWait(Gw2RequestPriority.HEDGE).isZero()) {
+                gw2ApiMetrics.recordHedge(endpoint, Gw2ApiMetrics.HedgeOutcome.SKIPPED);
+                return;
+            }
+            log.debug("Request to endpoint '{}' did not respond in {} ms, hedging it.", endpoint, delay.toMillis());
+            try {
+                T response = fetch(endpoint, url, responseType, Gw2RequestPriority.HEDGE, deadline);
+                var cache = caches.get(endpoint);
+                if(cache != null && !request.isDone()) {
+                    cache.put(url, response);
+                }
+                boolean won = request.complete(response);
+                gw2ApiMetrics.recordHedge(endpoint, won ? Gw2ApiMetrics.HedgeOutcome.WON : Gw2ApiMetrics.HedgeOutcome.LOST);
+            } catch (RuntimeException e) {
+                log.debug("Hedged request to endpoint '{}' failed.", endpoint, e);
+                gw2ApiMetrics.recordHedge(endpoint, Gw2ApiMetrics.HedgeOutcome.FAILED);
+            }
+        });
+    }
+
+    private String inFlightKey(Gw2Endpoint endpoint, String url) {
+        return endpoint.name() + " " + url;
+    }
+
+    /**
+     * Send a request on this thread and read the whole response body, see {@link #getBodyAsync(Gw2Endpoint, String, Deadline)}.
+     * @throws Gw2ApiException If the API failed to respond, or the response could not be read.
+     * @throws UnauthorizedException If the API key has no permissions.
+     */
+    private byte[] getBody(Gw2Endpoint endpoint, String url, Deadline deadline) throws Gw2ApiException, UnauthorizedException {
+        return send(endpoint, Gw2RequestPriority.INTERACTIVE, deadline, () -> {
+            byte[] body = restTemplate.execute(url, HttpMethod.GET, null, response -> StreamUtils.copyToByteArray(response.getBody()));
+            if(body == null) throw new Gw2ApiException("Response body of '" + endpoint + "' was not read!");
+            return body;
+        });
+    }
+
+    /**
+     * Send a GET request to the Gw2 API on the Gw2 API executor, and get the response body as it arrived, without
+     * binding it to objects. Used by the {@link Gw2AccountCache}, which reads the body itself. These requests are
+     * not cached or coalesced here.
+     * @param deadline Deadline of the command that sends the request. When it passes, the request is aborted.
+     * @return Future of the response body. It fails with {@link Gw2ApiException} or {@link UnauthorizedException}.
+     */
+    public CompletableFuture<byte[]> getBodyAsync(Gw2Endpoint endpoint, String url, Deadline deadline) {
+        try {
+            var response = CompletableFuture.supplyAsync(() -> getBody(endpoint, url, deadline), gw2ApiExecutor);
+            //not shared, so it is failed at the deadline and not started if it's still queued
+            return FutureUtils.failAtDeadline(response, deadline, "Request to '" + endpoint + "'");
+        } catch (RejectedExecutionException e) {
+            log.warn("Gw2 API executor is full, request to endpoint '{}' was rejected.", endpoint);
+            return CompletableFuture.failedFuture(new Gw2ApiException(e));
+        }
+    }
+
+    private <T> T fetch(
+            Gw2Endpoint endpoint,
+            String url,
+            Class<T> responseType,
+            Gw2RequestPriority priority,
+            Deadline deadline
+    ) throws Gw2ApiException, UnauthorizedException {
+        return send(endpoint, priority, deadline, () -> {
+            var response = restTemplate.getForEntity(url, responseType);
+            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
+            return response.getBody();
+        });
+    }
+
+    /**
+     * Send a request to the API, if the circuit breaker and the rate limiter allow it, and record the
+     * outcome in the circuit breaker.
+     * @param deadline The request is not sent if this passed, for example while it was queued on the executor.
+     * @param call Performs the request with the {@link RestTemplate}.
+     */
+    private <T> T send(
+            Gw2Endpoint endpoint,
+            Gw2RequestPriority priority,
+            Deadline deadline,
+            Supplier<T> call
+    ) throws Gw2ApiException, UnauthorizedException {
+        if(deadline.isExpired()) {
+            throw new Gw2DeadlineExceededException("Request to '" + endpoint + "' was not sent, the deadline passed.");
+        }
+        //fail fast if the API is known to be down
+        var permission = gw2CircuitBreaker.acquirePermission(endpoint.getFamily());
+        Duration expectedWait = gw2RateLimiter.estimateWait(priority);
+        if(!expectedWait.isZero()) {
+            log.debug("{} request to endpoint '{}' is delayed by the rate limiter for about {} ms.",
+                    priority, endpoint, expectedWait.toMillis());
+        }
+        if(!gw2RateLimiter.acquire(priority, deadline.remaining())) {
+            gw2CircuitBreaker.releasePermission(permission);
+            if(deadline.isExpired()) {
+                throw new Gw2DeadlineExceededException("Request to '" + endpoint + "' did not get a rate limit token before the deadline.");
+            }
+            throw new Gw2ApiException("Gw2 API rate limit budget is exhausted, request to '" + endpoint + "' was not sent.");
+        }
+        log.debug("Sending request to Gw2 API endpoint '{}'.", endpoint);
+        long start = System.nanoTime();
+        //the metrics of the rest template are tagged with this endpoint
+        gw2ApiMetrics.setCurrentEndpoint(endpoint);
+        var abortHandle = gw2RequestAborter.abortAt(deadline, endpoint);
+        try {
+            T response = call.get();
+            gw2CircuitBreaker.onSuccess(permission, Duration.ofNanos(System.nanoTime() - start));
+            return response;
+        } catch (UnauthorizedException | Gw2ApiClientException e) {
+            //the API answered, it's the key or the request that is wrong
+            gw2CircuitBreaker.onSuccess(permission, Duration.ofNanos(System.nanoTime() - start));
+            throw e;
+        } catch (Gw2ApiException e) {
+            gw2CircuitBreaker.onFailure(permission, Duration.ofNanos(System.nanoTime() - start));
+            throw e;
+        } catch (ResourceAccessException e) {
+            if(abortHandle.isAborted()) throw aborted(endpoint, permission);
+            log.error("Gw2 API failure on endpoint '{}'.", endpoint, e);
+            gw2CircuitBreaker.onFailure(permission, Duration.ofNanos(System.nanoTime() - start));
+            throw new Gw2ApiException(e);
+        } catch (RuntimeException e) {
+            if(abortHandle.isAborted()) throw aborted(endpoint, permission);
+            //for example the response could not be converted, the outcome must still be recorded to end a probe
+            log.error("Unexpected failure of request to Gw2 API endpoint '{}'.", endpoint, e);
+            gw2CircuitBreaker.onFailure(permission, Duration.ofNanos(System.nanoTime() - start));
+            throw new Gw2ApiException(e);
+        } finally {
+            gw2RequestAborter.end(abortHandle);
+            gw2ApiMetrics.clearCurrentEndpoint();
+        }
+    }
+
+    /**
+     * Create the exception of a request that was aborted at its deadline. Its outcome is not known, so it's not
+     * recorded in the circuit breaker.
+     */
+    private Gw2DeadlineExceededException aborted(Gw2Endpoint endpoint, Gw2CircuitBreaker.Permission permission) {
+        log.debug("Request to endpoint '{}' was aborted, the deadline passed.", endpoint);
+        gw2CircuitBreaker.releasePermission(permission);
+        return new Gw2DeadlineExceededException("Request to '" + endpoint + "' was aborted, the deadline passed.");
+    }
+
+    /**
+     * Get hit, miss and eviction counters of every endpoint cache in an API ready format.
+     * @see Gw2CacheStatisticsResponse
+     */
+    public Gw2CacheStatisticsResponse getCacheStatistics() {
+        var statistics = new ArrayList<Gw2CacheStatisticsResponse.EndpointCacheStatistic>();
+        caches.forEach((endpoint, cache) -> {
+            var stats = cache.stats();
+            statistics.add(new Gw2CacheStatisticsResponse.EndpointCacheStatistic(
+                    endpoint.name(),
+                    endpoint.getTimeToLive().toSeconds(),
+                    cache.estimatedSize(),
+                    stats.hitCount(),
+                    stats.missCount(),
+                    stats.hitRate(),
+                    stats.evictionCount()
+            ));
+        });
+        var response = new Gw2CacheStatisticsResponse();
+        response.setCaches(statistics);
+        return response;
+    }
+}
@@ -0,0 +1,161 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer metrics of the requests sent to the Gw2 API. Meters are tagged with the logical {@link Gw2Endpoint},
+ * never with the URL, because URLs contain API keys and character names. The meters are:
+ * <ul>
+ *     <li>gw2.api.requests: latency timer (with histogram and p95), tagged with endpoint and status. The status is the
+ *     HTTP status code, or TIMEOUT/IO_ERROR if there was no response. Its count is the status code counter.</li>
+ *     <li>gw2.api.timeouts: how many requests timed out (connecting, waiting for a pooled connection or reading).</li>
+ *     <li>gw2.api.response.size: bytes of the (decompressed) response bodies.</li>
+ *     <li>gw2.api.hedges: hedged requests, tagged with endpoint and outcome, see {@link HedgeOutcome}.</li>
+ * </ul>
+ * The endpoint of the request that is currently sent is stored on the sending thread, because the
+ * {@link org.springframework.web.client.RestTemplate} only sees the URL.
+ */
+@Service
+@RequiredArgsConstructor
+public class Gw2ApiMetrics {
+
+    /**
+     * Tag value for requests that were sent without an endpoint, should not happen.
+     */
+    private static final String UNKNOWN_ENDPOINT = "UNKNOWN";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadLocal<Gw2Endpoint> currentEndpoint = new ThreadLocal<>();
+
+    /**
+     * What happened to a hedged request.
+     */
+    public enum HedgeOutcome {
+        /**
+         * Its response arrived first, and was used.
+         */
+        WON,
+        /**
+         * The original request responded first.
+         */
+        LOST,
+        /**
+         * The hedged request failed.
+         */
+        FAILED,
+        /**
+         * It was not sent, because there was no spare rate limit budget.
+         */
+        SKIPPED
+    }
+
+    /**
+     * Mark the endpoint of the request that this thread is going to send. Must be
+     * followed by {@link #clearCurrentEndpoint()}.
+     */
+    void setCurrentEndpoint(Gw2Endpoint endpoint) {
+        currentEndpoint.set(endpoint);
+    }
+
+    void clearCurrentEndpoint() {
+        currentEndpoint.remove();
+    }
+
+    /**
+     * Get the endpoint of the request that this thread is sending.
+     */
+    public String getCurrentEndpointTag() {
+        Gw2Endpoint endpoint = currentEndpoint.get();
+        return endpoint == null ? UNKNOWN_ENDPOINT : endpoint.name();
+    }
+
+    /**
+     * Record a request that got a response.
+     * @param endpointTag From {@link #getCurrentEndpointTag()}.
+     * @param status HTTP status code.
+     * @param latency Time from sending the request to reading the whole body.
+     * @param responseBytes Size of the body that was read, null if it was not read.
+     */
+    public void recordResponse(String endpointTag, int status, Duration latency, @Nullable Long responseBytes) {
+        requestTimer(endpointTag, String.valueOf(status)).record(latency);
+        if(responseBytes != null) {
+            DistributionSummary.builder("gw2.api.response.size")
+                    .description("Size of Gw2 API response bodies")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpointTag)
+                    .register(meterRegistry)
+                    .record(responseBytes);
+        }
+    }
+
+    /**
+     * Record a request that failed without a (complete) response.
+     * @param timeout True if the request timed out, false for other IO errors.
+     */
+    public void recordFailure(String endpointTag, boolean timeout, Duration latency) {
+        requestTimer(endpointTag, timeout ? "TIMEOUT" : "IO_ERROR").record(latency);
+        if(timeout) {
+            Counter.builder("gw2.api.timeouts")
+                    .description("Gw2 API requests that timed out")
+                    .tag("endpoint", endpointTag)
+                    .register(meterRegistry)
+                    .increment();
+        }
+    }
+
+    /**
+     * Record what happened to a hedged request.
+     */
+    public void recordHedge(Gw2Endpoint endpoint, HedgeOutcome outcome) {
+        Counter.builder("gw2.api.hedges")
+                .description("Hedged Gw2 API requests")
+                .tag("endpoint", endpoint.name())
+                .tag("outcome", outcome.name())
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Get the recent 95th percentile latency of the successful requests of an endpoint.
+     * @param minSamples Empty is returned if the endpoint had less successful requests than this.
+     * @return The latency, or empty if there is not enough data.
+     */
+    public Optional<Duration> getP95Latency(Gw2Endpoint endpoint, long minSamples) {
+        Timer timer = meterRegistry.find("gw2.api.requests")
+                .tag("endpoint", endpoint.name())
+                .tag("status", "200")
+                .timer();
+        if(timer == null || timer.count() < minSamples) return Optional.empty();
+        for(ValueAtPercentile percentile: timer.takeSnapshot().percentileValues()) {
+            //zero when there were no requests in the recent window
+            if(percentile.percentile() == 0.95 && percentile.value() > 0) {
+                return Optional.of(Duration.ofNanos((long) percentile.value(TimeUnit.NANOSECONDS)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Timer requestTimer(String endpointTag, String status) {
+        return Timer.builder("gw2.api.requests")
+                .description("Latency of Gw2 API requests")
+                .tag("endpoint", endpointTag)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                //used to decide when to hedge
+                .publishPercentiles(0.95)
+                .register(meterRegistry);
+    }
+}
@@ -2,45 +2,37 @@ package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Performs operations on the Gw2 API related to characters.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2CharacterService {
 
-    private final RestTemplate restTemplate;
-
-    public Gw2CharacterService(@Qualifier("gw2api") RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final Gw2AccountCache gw2AccountCache;
 
     /**
-     * Fetch all character names of an account.
+     * Fetch all character names of an account (not encoded). The future fails with
+     * {@link Gw2ApiException}, or {@link UnauthorizedException} if the API key does not have character permission.
      * @param apiKey API key.
-     * @return List of names (not encoded).
-     * @throws Gw2ApiException If the API fails to respond.
-     * @throws UnauthorizedException If the API key does not have character permission.
+     * @param refresh If true, the cached response is not used.
+     * @param deadline The request is abandoned when this passes.
      */
-    public List<String> fetchCharacterNames(String apiKey) throws Gw2ApiException, UnauthorizedException {
+    public CompletableFuture<List<String>> fetchCharacterNamesAsync(String apiKey, boolean refresh, Deadline deadline) {
         String getCharactersUrl = "/v2/characters?access_token=" + apiKey;
-        log.debug("Character endpoint: {}", getCharactersUrl);
-        try {
-            var response = restTemplate.getForEntity(getCharactersUrl, String[].class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null.");
-            return Arrays.asList(response.getBody());
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.CHARACTERS, getCharactersUrl, refresh, deadline,
+                        parser -> parser.readValueAs(String[].class))
+                .thenApply(Arrays::asList);
     }
 }
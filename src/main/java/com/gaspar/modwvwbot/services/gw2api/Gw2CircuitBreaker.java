@@ -0,0 +1,268 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.controllers.dto.Gw2CircuitBreakerResponse;
+import com.gaspar.modwvwbot.exception.Gw2ApiUnavailableException;
+import com.gaspar.modwvwbot.model.gw2api.Gw2EndpointFamily;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Circuit breakers in front of the Gw2 API, one for each {@link Gw2EndpointFamily}. When the API is down,
+ * requests fail immediately with {@link Gw2ApiUnavailableException}, instead of waiting for timeouts.
+ * <ul>
+ *     <li>Closed: requests go through, and the outcome of the last calls are recorded. If too many of them failed
+ *     or were slow, the circuit opens.</li>
+ *     <li>Open: requests fail fast. After some time the circuit becomes half open.</li>
+ *     <li>Half open: a single probe request is let through. If it succeeds, the circuit is closed, otherwise
+ *     it opens again.</li>
+ * </ul>
+ * Every request gets a {@link Permission}, which tells if it is the probe. Only the outcome of the probe decides
+ * the half open state. Requests that were let through before the circuit opened may finish while it's half open,
+ * their outcome is ignored.
+ */
+@Service
+@Slf4j
+public class Gw2CircuitBreaker {
+
+    public enum CircuitState {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.window_size}")
+    private int windowSize;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.minimum_calls}")
+    private int minimumCalls;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.failure_rate_threshold}")
+    private double failureRateThreshold;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.slow_call_rate_threshold}")
+    private double slowCallRateThreshold;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.slow_call_millis}")
+    private long slowCallMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_circuit_breaker.open_seconds}")
+    private long openSeconds;
+
+    private final Map<Gw2EndpointFamily, Circuit> circuits = new EnumMap<>(Gw2EndpointFamily.class);
+
+    @PostConstruct
+    public void init() {
+        for(Gw2EndpointFamily family: Gw2EndpointFamily.values()) {
+            circuits.put(family, new Circuit(family));
+        }
+    }
+
+    /**
+     * Must be called before sending a request to the API.
+     * @return Permission of the request, the outcome must be recorded with this.
+     * @throws Gw2ApiUnavailableException If the circuit of the family is open, or a probe is already in flight.
+     */
+    public Permission acquirePermission(Gw2EndpointFamily family) throws Gw2ApiUnavailableException {
+        return circuits.get(family).acquirePermission();
+    }
+
+    /**
+     * Give back a permission without sending the request (for example because the rate limiter rejected it).
+     * If it was the probe, another probe can be let through.
+     */
+    public void releasePermission(Permission permission) {
+        circuits.get(permission.getFamily()).releasePermission(permission);
+    }
+
+    /**
+     * Record that the API answered. Answers with a client error (such as 401 or 404) also count as success, the API is working.
+     * @param elapsed How long the API took to answer.
+     */
+    public void onSuccess(Permission permission, Duration elapsed) {
+        circuits.get(permission.getFamily()).record(permission, false, isSlow(elapsed));
+    }
+
+    /**
+     * Record that the API failed to answer.
+     * @param elapsed How long the request took before failing.
+     */
+    public void onFailure(Permission permission, Duration elapsed) {
+        circuits.get(permission.getFamily()).record(permission, true, isSlow(elapsed));
+    }
+
+    public CircuitState getState(Gw2EndpointFamily family) {
+        return circuits.get(family).getState();
+    }
+
+    /**
+     * Get the state of every circuit in an API ready format.
+     */
+    public Gw2CircuitBreakerResponse getCircuitStates() {
+        var statuses = new ArrayList<Gw2CircuitBreakerResponse.CircuitStatus>();
+        circuits.values().forEach(circuit -> statuses.add(circuit.getStatus()));
+        var response = new Gw2CircuitBreakerResponse();
+        response.setCircuits(statuses);
+        return response;
+    }
+
+    private boolean isSlow(Duration elapsed) {
+        return elapsed.toMillis() >= slowCallMillis;
+    }
+
+    /**
+     * Permission to send one request, given by {@link #acquirePermission(Gw2EndpointFamily)}.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Permission {
+
+        private final Gw2EndpointFamily family;
+
+        /**
+         * True if this is the single request that is let through when the circuit is half open.
+         */
+        private final boolean probe;
+    }
+
+    /**
+     * Circuit of one endpoint family. Records the outcomes of the last {@link #windowSize} calls in a ring buffer.
+     */
+    private class Circuit {
+
+        private final Gw2EndpointFamily family;
+
+        private final boolean[] failedCalls = new boolean[windowSize];
+
+        private final boolean[] slowCalls = new boolean[windowSize];
+
+        private CircuitState state = CircuitState.CLOSED;
+
+        private int nextIndex;
+
+        private int recordedCalls;
+
+        private int failedCount;
+
+        private int slowCount;
+
+        private Instant openedAt;
+
+        private boolean probeInFlight;
+
+        Circuit(Gw2EndpointFamily family) {
+            this.family = family;
+        }
+
+        synchronized Permission acquirePermission() {
+            if(state == CircuitState.OPEN) {
+                Duration remaining = remainingOpenTime();
+                if(!remaining.isNegative() && !remaining.isZero()) {
+                    throw new Gw2ApiUnavailableException(family, remaining);
+                }
+                log.info("Circuit of Gw2 API family '{}' is half open, letting a probe request through.", family);
+                state = CircuitState.HALF_OPEN;
+            }
+            if(state == CircuitState.HALF_OPEN) {
+                if(probeInFlight) {
+                    throw new Gw2ApiUnavailableException(family, Duration.ZERO);
+                }
+                probeInFlight = true;
+                return new Permission(family, true);
+            }
+            return new Permission(family, false);
+        }
+
+        synchronized void releasePermission(Permission permission) {
+            if(permission.isProbe()) {
+                probeInFlight = false;
+            }
+        }
+
+        synchronized void record(Permission permission, boolean failed, boolean slow) {
+            switch (state) {
+                case HALF_OPEN:
+                    //only the result of the probe decides (a slow answer is still an answer)
+                    if(!permission.isProbe()) return;
+                    probeInFlight = false;
+                    if(failed) {
+                        open();
+                    } else {
+                        close();
+                    }
+                    return;
+                case OPEN:
+                    //request was sent before the circuit opened
+                    return;
+                case CLOSED:
+                    if(recordedCalls == windowSize) {
+                        //overwrite the oldest outcome
+                        if(failedCalls[nextIndex]) failedCount--;
+                        if(slowCalls[nextIndex]) slowCount--;
+                    } else {
+                        recordedCalls++;
+                    }
+                    failedCalls[nextIndex] = failed;
+                    slowCalls[nextIndex] = slow;
+                    if(failed) failedCount++;
+                    if(slow) slowCount++;
+                    nextIndex = (nextIndex + 1) % windowSize;
+                    if(recordedCalls >= minimumCalls && (failureRate() >= failureRateThreshold || slowCallRate() >= slowCallRateThreshold)) {
+                        log.warn("Gw2 API family '{}' has failure rate {} and slow call rate {} in the last {} calls.",
+                                family, failureRate(), slowCallRate(), recordedCalls);
+                        open();
+                    }
+            }
+        }
+
+        synchronized CircuitState getState() {
+            return state;
+        }
+
+        synchronized Gw2CircuitBreakerResponse.CircuitStatus getStatus() {
+            long retryAfterSeconds = state == CircuitState.OPEN ? Math.max(0, remainingOpenTime().toSeconds()) : 0;
+            return new Gw2CircuitBreakerResponse.CircuitStatus(
+                    family.name(),
+                    state.name(),
+                    recordedCalls,
+                    failureRate(),
+                    slowCallRate(),
+                    retryAfterSeconds
+            );
+        }
+
+        private void open() {
+            log.warn("Circuit of Gw2 API family '{}' is open, requests fail fast for {} seconds.", family, openSeconds);
+            state = CircuitState.OPEN;
+            openedAt = Instant.now();
+        }
+
+        private void close() {
+            log.info("Circuit of Gw2 API family '{}' is closed again.", family);
+            state = CircuitState.CLOSED;
+            recordedCalls = 0;
+            failedCount = 0;
+            slowCount = 0;
+            nextIndex = 0;
+        }
+
+        private Duration remainingOpenTime() {
+            return Duration.between(Instant.now(), openedAt.plusSeconds(openSeconds));
+        }
+
+        private double failureRate() {
+            return recordedCalls == 0 ? 0 : (double) failedCount / recordedCalls;
+        }
+
+        private double slowCallRate() {
+            return recordedCalls == 0 ? 0 : (double) slowCount / recordedCalls;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides if and when an interactive request is hedged: if the response did not arrive by the recent p95
+ * latency of the endpoint, the same request is sent again, and whichever responds first is used. All Gw2 API
+ * requests are idempotent GETs, so this is safe. Hedging is only enabled for some endpoints in the
+ * 'gw2_api_hedging' settings, and the hedged request is sent only from spare rate limit budget
+ * (see {@link Gw2RequestPriority#HEDGE}).
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2HedgingPolicy {
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_hedging.enabled}")
+    private boolean enabled;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_hedging.endpoints}")
+    private Set<Gw2Endpoint> hedgedEndpoints;
+
+    /**
+     * Endpoints with less successful requests than this are not hedged, their p95 is not reliable.
+     */
+    @Value("${com.gaspar.modwvwbot.gw2_api_hedging.min_samples}")
+    private long minSamples;
+
+    /**
+     * Requests are never hedged sooner than this, even if the endpoint is usually very fast.
+     */
+    @Value("${com.gaspar.modwvwbot.gw2_api_hedging.min_delay_millis}")
+    private long minDelayMillis;
+
+    private final Gw2ApiMetrics gw2ApiMetrics;
+
+    @PostConstruct
+    public void init() {
+        if(enabled) {
+            log.info("Gw2 API requests of these endpoints are hedged at their p95 latency: {}", hedgedEndpoints);
+        }
+    }
+
+    /**
+     * Get how long to wait for the response before hedging a request.
+     * @return The delay, or empty if the request should not be hedged.
+     */
+    public Optional<Duration> getHedgeDelay(Gw2Endpoint endpoint, Gw2RequestPriority priority) {
+        if(!enabled || priority != Gw2RequestPriority.INTERACTIVE || !hedgedEndpoints.contains(endpoint)) {
+            return Optional.empty();
+        }
+        Duration minDelay = Duration.ofMillis(minDelayMillis);
+        return gw2ApiMetrics.getP95Latency(endpoint, minSamples)
+                .map(p95 -> p95.compareTo(minDelay) < 0 ? minDelay : p95);
+    }
+}
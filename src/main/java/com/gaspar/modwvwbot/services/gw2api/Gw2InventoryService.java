@@ -1,84 +1,133 @@
 package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2ApiUnavailableException;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.AmountCounter;
 import com.gaspar.modwvwbot.misc.AmountUtils;
-import com.gaspar.modwvwbot.misc.EmoteUtils;
-import com.gaspar.modwvwbot.model.Amount;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
 import com.gaspar.modwvwbot.model.gw2api.InventoryResponse;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import net.dv8tion.jda.api.interactions.InteractionHook;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Service that performs Gw2 API calls to the /inventory endpoint
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2InventoryService {
 
-    @Value("${com.gaspar.modwvwbot.emote_ids.loading}")
-    private long loadingId;
+    @Value("${com.gaspar.modwvwbot.inventory_fallback_parallelism}")
+    private int fallbackParallelism;
 
-    private final RestTemplate restTemplate;
+    private final Gw2AccountCache gw2AccountCache;
     private final Gw2CharacterService gw2CharacterService;
 
-    public Gw2InventoryService(@Qualifier("gw2api") RestTemplate restTemplate, Gw2CharacterService gw2CharacterService) {
-        this.restTemplate = restTemplate;
-        this.gw2CharacterService = gw2CharacterService;
+    /**
+     * Fetches all inventories of characters and counts how many items of interest are in them. All characters are
+     * fetched in one request (/characters?ids=all). If that fails, the inventories are fetched one by one, a few
+     * at the same time, and each is added to the counter when it arrives. If the deadline passes meanwhile, the
+     * inventories that were already counted stay in the counter. Updates of the counter are synchronized on it.
+     * The responses are cached, see {@link Gw2AccountCache}.
+     * @param apiKey Api key.
+     * @param counter Some amounts of items of interest. This counter will be updated.
+     * @param refresh If true, the cached responses are not used.
+     * @param deadline No more inventories are requested after this passes, and the future fails with
+     * {@link Gw2DeadlineExceededException}.
+     * @return Future that completes when all inventories are counted. It fails with {@link Gw2ApiException}
+     * if the API fails to respond, or with {@link UnauthorizedException} if the API key does not have
+     * characters or inventories permission.
+     */
+    public CompletableFuture<Void> countItemsInInventoriesAsync(String apiKey, AmountCounter counter, boolean refresh, Deadline deadline) {
+        log.debug("Request to count '{}' items in inventories.", counter.getIndex().size());
+        //counted separately, so a failed bulk request does not leave partial counts
+        var bulkCounter = counter.getIndex().newCounter();
+        String allCharactersUrl = "/v2/characters?ids=all&access_token=" + apiKey;
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.CHARACTERS, allCharactersUrl, refresh, deadline,
+                        parser -> AmountUtils.countCharactersJsonStream(bulkCounter, parser))
+                .handle((characterCount, error) -> {
+                    if(error == null) {
+                        log.debug("Counted the inventories of {} characters with one request.", characterCount);
+                        synchronized (counter) {
+                            counter.addAll(bulkCounter);
+                        }
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Throwable cause = FutureUtils.unwrap(error);
+                    if(cause instanceof UnauthorizedException || cause instanceof Gw2ApiUnavailableException
+                            || cause instanceof Gw2DeadlineExceededException) {
+                        //falling back would fail the same way, or there is no time left for it
+                        return CompletableFuture.<Void>failedFuture(cause);
+                    }
+                    log.warn("Failed to fetch all characters at once, counting inventories one by one.", cause);
+                    return countItemsPerCharacterAsync(apiKey, counter, refresh, deadline);
+                })
+                .thenCompose(Function.identity());
     }
 
     /**
-     * Fetches all inventories of characters and counts how many items of interest are in them.
-     * @param apiKey Api key.
-     * @param amounts Some amounts of items of interest. This list will be updated.
-     * @param hook Used to edit the loading message.
-     * @throws Gw2ApiException If the API fails to respond.
-     * @throws UnauthorizedException If the API key does not have characters or inventories permission.
+     * Fetch the character names, then count the inventories one by one. At most {@link #fallbackParallelism}
+     * inventories are fetched at the same time. Characters that are next in a lane when the deadline passes are
+     * not requested.
      */
-    public void countItemsInInventories(
-            String apiKey,
-            List<Amount> amounts,
-            InteractionHook hook
-    ) throws Gw2ApiException, UnauthorizedException {
-        String loading = EmoteUtils.animatedEmote("loading", loadingId);
-        hook.editOriginal("A karaktereid lekérdezése... " + loading).queue();
-        log.debug("Request to count '{}' items in inventories.", amounts.size());
-        var characterNames = gw2CharacterService.fetchCharacterNames(apiKey);
-        log.debug("Fetched these character names from Gw2 API: {}", characterNames);
-        //check inventory of all characters
-        for(String name: characterNames) {
-            hook.editOriginal(name + " inventory-jának vizsgálata... " + loading).queue();
-            log.debug("Fetching the inventory of character '{}'...", name);
-            countItemsInInventory(apiKey, name, amounts);
-        }
+    private CompletableFuture<Void> countItemsPerCharacterAsync(String apiKey, AmountCounter counter, boolean refresh, Deadline deadline) {
+        return gw2CharacterService.fetchCharacterNamesAsync(apiKey, refresh, deadline).thenCompose(characterNames -> {
+            log.debug("Fetched these character names from Gw2 API: {}", characterNames);
+            //each lane fetches its characters one after the other
+            List<CompletableFuture<Void>> lanes = new ArrayList<>();
+            for(int lane = 0; lane < fallbackParallelism; lane++) {
+                CompletableFuture<Void> laneInventories = CompletableFuture.completedFuture(null);
+                for(int i = lane; i < characterNames.size(); i += fallbackParallelism) {
+                    String name = characterNames.get(i);
+                    laneInventories = laneInventories.thenCompose(ignored -> {
+                        if(deadline.isExpired()) {
+                            //the rest of the lane is skipped
+                            return CompletableFuture.failedFuture(new Gw2DeadlineExceededException(
+                                    "Inventory of character '" + name + "' was not requested, the deadline passed."));
+                        }
+                        return countItemsInInventoryAsync(apiKey, name, counter, refresh, deadline);
+                    });
+                }
+                lanes.add(laneInventories);
+            }
+            return CompletableFuture.allOf(lanes.toArray(new CompletableFuture[0]));
+        });
     }
 
     /**
      * Count items in a characters inventory.
      * @param apiKey Api key.
      * @param name Name of the character.
-     * @param amounts Amounts of items, which will be modified by this method.
-     * @throws Gw2ApiException If the API fails to respond.
-     * @throws UnauthorizedException If the API key does not have characters or inventories permission.
+     * @param counter Amounts of items, which will be modified when the inventory arrives.
      */
-    private void countItemsInInventory(String apiKey, String name, List<Amount> amounts)
-            throws Gw2ApiException, UnauthorizedException {
+    private CompletableFuture<Void> countItemsInInventoryAsync(
+            String apiKey,
+            String name,
+            AmountCounter counter,
+            boolean refresh,
+            Deadline deadline
+    ) {
         String getInventoryEndpoint = "/v2/characters/%s/inventory?access_token=" + apiKey;
         String urlWithName = String.format(getInventoryEndpoint, name);
-        try {
-            var response = restTemplate.getForEntity(urlWithName, InventoryResponse.class);
-            if(response.getBody() == null) throw new Gw2ApiException("No response body");
-            AmountUtils.countInInventory(amounts, response.getBody());
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+        log.debug("Fetching the inventory of character '{}'...", name);
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.CHARACTER_INVENTORY, urlWithName, refresh, deadline,
+                        parser -> parser.readValueAs(InventoryResponse.class))
+                .thenAccept(inventory -> {
+                    //inventories arrive on different threads
+                    synchronized (counter) {
+                        AmountUtils.countInInventory(counter, inventory);
+                    }
+                });
     }
 }
@@ -0,0 +1,83 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.model.CatalogWvwRank;
+import com.gaspar.modwvwbot.model.WvwRankTable;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import com.gaspar.modwvwbot.model.gw2api.WvwRank;
+import com.gaspar.modwvwbot.repository.CatalogWvwRankRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps all Wvw ranks in memory, in a {@link WvwRankTable}. The ranks are saved to the database, and loaded
+ * from there at startup. They only change with game updates, so they are refreshed from the API rarely.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2RankCatalogService {
+
+    private final Gw2ApiGateway gw2ApiGateway;
+    private final CatalogWvwRankRepository catalogWvwRankRepository;
+
+    private volatile WvwRankTable rankTable = new WvwRankTable(List.of());
+
+    @PostConstruct
+    public void init() {
+        rankTable = new WvwRankTable(catalogWvwRankRepository.findAll());
+        log.info("Loaded {} Wvw ranks from the database.", rankTable.size());
+    }
+
+    /**
+     * Fetch all ranks from the API, and save them. Runs at startup and then periodically. In case
+     * the API fails, the previous ranks are kept.
+     */
+    @Scheduled(fixedDelayString = "${com.gaspar.modwvwbot.static_data_refresh_hours}", timeUnit = TimeUnit.HOURS)
+    public void refreshRanks() {
+        try {
+            fetchAndSaveRanks(Gw2RequestPriority.BACKGROUND);
+        } catch (Exception e) {
+            log.warn("Failed to refresh Wvw ranks, keeping the previous {} ranks.", rankTable.size(), e);
+        }
+    }
+
+    /**
+     * Get the rank table. It is only fetched from the API now if it was never saved before.
+     * @return Future of the table. Fails with {@link Gw2ApiException} if the ranks had to be fetched and the API failed.
+     */
+    public CompletableFuture<WvwRankTable> getRankTableAsync() {
+        WvwRankTable table = rankTable;
+        if(!table.isEmpty()) return CompletableFuture.completedFuture(table);
+        log.info("No Wvw ranks are known yet, fetching them now...");
+        String endpoint = "/v2/wvw/ranks?ids=all";
+        return gw2ApiGateway.getAsync(Gw2Endpoint.WVW_RANKS, endpoint, WvwRank[].class)
+                .thenApply(this::saveRanks);
+    }
+
+    private void fetchAndSaveRanks(Gw2RequestPriority priority) throws Gw2ApiException {
+        String endpoint = "/v2/wvw/ranks?ids=all";
+        saveRanks(gw2ApiGateway.get(Gw2Endpoint.WVW_RANKS, endpoint, WvwRank[].class, priority));
+        log.debug("Wvw ranks refreshed, there are {} ranks.", rankTable.size());
+    }
+
+    private WvwRankTable saveRanks(WvwRank[] ranks) {
+        List<CatalogWvwRank> catalogRanks = Arrays.stream(ranks)
+                .map(CatalogWvwRank::fromResponse)
+                .collect(Collectors.toList());
+        catalogWvwRankRepository.saveAll(catalogRanks);
+        WvwRankTable table = new WvwRankTable(catalogRanks);
+        rankTable = table;
+        return table;
+    }
+}
@@ -0,0 +1,235 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.controllers.dto.Gw2RateLimitResponse;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket that limits how many requests the bot sends to the Gw2 API. The API throttles per IP, so
+ * all commands and scheduled jobs share this one bucket.
+ * <ul>
+ *     <li>{@link Gw2RequestPriority#INTERACTIVE} requests can take any token, and are served first.</li>
+ *     <li>{@link Gw2RequestPriority#BACKGROUND} requests only get a token if no interactive request is waiting,
+ *     and they can't take the last few tokens, which are reserved for interactive requests.</li>
+ *     <li>{@link Gw2RequestPriority#HEDGE} requests only get a token if nobody is waiting and the reserve is full,
+ *     and they never wait. A rejected hedge is not counted as rejected, the original request is still sent.</li>
+ * </ul>
+ * Requests wait for a token for a bounded time, then they are rejected.
+ */
+@Service
+@Slf4j
+public class Gw2RateLimiter {
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_rate_limit.requests_per_second}")
+    private double requestsPerSecond;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_rate_limit.burst}")
+    private int burst;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_rate_limit.background_reserve}")
+    private int backgroundReserve;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_rate_limit.interactive_max_wait_millis}")
+    private long interactiveMaxWaitMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_api_rate_limit.background_max_wait_millis}")
+    private long backgroundMaxWaitMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when tokens may have become available.
+     */
+    private final Condition tokensAvailable = lock.newCondition();
+
+    /**
+     * Current number of tokens. Can be negative after the API throttled us, see {@link #drain()}.
+     */
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    private int interactiveWaiting;
+
+    private int backgroundWaiting;
+
+    private long grantedCount;
+
+    private long delayedCount;
+
+    private long rejectedCount;
+
+    private long throttledCount;
+
+    @PostConstruct
+    public void init() {
+        tokens = burst;
+        lastRefillNanos = System.nanoTime();
+        log.info("Gw2 API rate limit is {} requests per second, with bursts of {}.", requestsPerSecond, burst);
+    }
+
+    /**
+     * Take a token, waiting for one if necessary.
+     * @param priority Lane of the request.
+     * @return True if the request can be sent, false if no token was available in time.
+     */
+    public boolean acquire(Gw2RequestPriority priority) {
+        return acquire(priority, Duration.ofMillis(maxWaitMillis(priority)));
+    }
+
+    /**
+     * Take a token, waiting for one at most until the wait limit of the lane, or the given time, whichever is shorter.
+     * @param maxWait For example the time left until the deadline of the command.
+     * @see #acquire(Gw2RequestPriority)
+     */
+    public boolean acquire(Gw2RequestPriority priority, Duration maxWait) {
+        long maxWaitNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(maxWaitMillis(priority)), maxWait.toNanos());
+        long deadline = System.nanoTime() + maxWaitNanos;
+        boolean waited = false;
+        lock.lock();
+        try {
+            while(true) {
+                refill();
+                if(canTake(priority)) {
+                    tokens -= 1;
+                    grantedCount++;
+                    if(waited) delayedCount++;
+                    return true;
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                if(remainingNanos <= 0 && priority == Gw2RequestPriority.HEDGE) {
+                    log.debug("No spare Gw2 API rate limit token was available for a hedged request.");
+                    return false;
+                }
+                if(remainingNanos <= 0) {
+                    rejectedCount++;
+                    log.warn("No Gw2 API rate limit token was available for a {} request in {} ms.", priority,
+                            TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+                    return false;
+                }
+                waited = true;
+                changeWaiting(priority, 1);
+                try {
+                    tokensAvailable.awaitNanos(Math.min(remainingNanos, nanosPerToken()));
+                } finally {
+                    changeWaiting(priority, -1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            //others may be able to proceed now (for example background after the last interactive left)
+            tokensAvailable.signalAll();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimate how long a request in this lane would wait for a token right now. Does not take a token.
+     * @return Zero if the request can be sent immediately.
+     */
+    public Duration estimateWait(Gw2RequestPriority priority) {
+        lock.lock();
+        try {
+            refill();
+            double needed = priority == Gw2RequestPriority.INTERACTIVE ? 1 : 1 + backgroundReserve;
+            //everyone already waiting in front of this request
+            needed += interactiveWaiting;
+            if(priority != Gw2RequestPriority.INTERACTIVE) needed += backgroundWaiting;
+            double missing = needed - tokens;
+            if(missing <= 0) return Duration.ZERO;
+            return Duration.ofNanos((long) (missing / requestsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empty the bucket after the Gw2 API responded with 429 (too many requests). The bucket goes
+     * into debt of one full burst, so the bot backs off until the API's own limit has recovered.
+     */
+    public void drain() {
+        lock.lock();
+        try {
+            refill();
+            tokens = Math.min(tokens, 0) - burst;
+            throttledCount++;
+            log.warn("Gw2 API throttled the bot, rate limiter drained.");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the current budget usage of the rate limiter.
+     */
+    public Gw2RateLimitResponse getUsage() {
+        lock.lock();
+        try {
+            refill();
+            var usage = new Gw2RateLimitResponse();
+            usage.setRequestsPerSecond(requestsPerSecond);
+            usage.setBurst(burst);
+            usage.setBackgroundReserve(backgroundReserve);
+            usage.setAvailableTokens(tokens);
+            usage.setInteractiveWaiting(interactiveWaiting);
+            usage.setBackgroundWaiting(backgroundWaiting);
+            usage.setGrantedCount(grantedCount);
+            usage.setDelayedCount(delayedCount);
+            usage.setRejectedCount(rejectedCount);
+            usage.setThrottledCount(throttledCount);
+            return usage;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canTake(Gw2RequestPriority priority) {
+        if(priority == Gw2RequestPriority.INTERACTIVE) {
+            return tokens >= 1;
+        }
+        if(priority == Gw2RequestPriority.HEDGE) {
+            return interactiveWaiting == 0 && backgroundWaiting == 0 && tokens >= 1 + backgroundReserve;
+        }
+        return interactiveWaiting == 0 && tokens >= 1 + backgroundReserve;
+    }
+
+    /**
+     * Add the tokens that were generated since the last refill. Must hold the lock.
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        double generated = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1) * requestsPerSecond;
+        tokens = Math.min(burst, tokens + generated);
+        lastRefillNanos = now;
+    }
+
+    /**
+     * Time it takes for the bucket to gain one token.
+     */
+    private long nanosPerToken() {
+        return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond));
+    }
+
+    private void changeWaiting(Gw2RequestPriority priority, int change) {
+        if(priority == Gw2RequestPriority.INTERACTIVE) {
+            interactiveWaiting += change;
+        } else {
+            backgroundWaiting += change;
+        }
+    }
+
+    private long maxWaitMillis(Gw2RequestPriority priority) {
+        if(priority == Gw2RequestPriority.HEDGE) return 0;
+        return priority == Gw2RequestPriority.INTERACTIVE ? interactiveMaxWaitMillis : backgroundMaxWaitMillis;
+    }
+}
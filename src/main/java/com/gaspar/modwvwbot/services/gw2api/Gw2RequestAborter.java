@@ -0,0 +1,92 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts the HTTP exchange of a Gw2 API request when its deadline passes, so that it does not keep a connection
+ * and a Gw2 API executor thread busy after nobody waits for the response. The request factory of the rest template
+ * registers every request it creates here, and it's matched to the request that is sent on the same thread.
+ */
+@Component
+@Slf4j
+public class Gw2RequestAborter {
+
+    private final ThreadLocal<AbortHandle> currentHandle = new ThreadLocal<>();
+
+    /**
+     * Start tracking the request that is sent on this thread. It's aborted if it is still running when the
+     * deadline passes. {@link #end(AbortHandle)} must be called after the request.
+     */
+    AbortHandle abortAt(Deadline deadline, Gw2Endpoint endpoint) {
+        var handle = new AbortHandle(endpoint);
+        currentHandle.set(handle);
+        if(deadline != Deadline.NONE) {
+            CompletableFuture.delayedExecutor(deadline.remaining().toMillis(), TimeUnit.MILLISECONDS).execute(handle::abort);
+        }
+        return handle;
+    }
+
+    /**
+     * Stop tracking the request sent on this thread, it can't be aborted after this.
+     */
+    void end(AbortHandle handle) {
+        handle.finish();
+        currentHandle.remove();
+    }
+
+    /**
+     * Called by the request factory when the HTTP request is created, on the thread that sends it.
+     */
+    public void register(HttpUriRequest request) {
+        var handle = currentHandle.get();
+        if(handle != null) {
+            handle.setRequest(request);
+        }
+    }
+
+    /**
+     * One request that can be aborted.
+     */
+    static class AbortHandle {
+
+        private final Gw2Endpoint endpoint;
+
+        private HttpUriRequest request;
+
+        private boolean aborted;
+
+        private boolean finished;
+
+        private AbortHandle(Gw2Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        synchronized boolean isAborted() {
+            return aborted;
+        }
+
+        private synchronized void setRequest(HttpUriRequest request) {
+            this.request = request;
+            //the deadline passed before the request was created
+            if(aborted) request.abort();
+        }
+
+        private synchronized void abort() {
+            if(finished) return;
+            log.debug("Deadline of the request to endpoint '{}' passed, aborting it.", endpoint);
+            aborted = true;
+            if(request != null) request.abort();
+        }
+
+        private synchronized void finish() {
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local HTTP server that stands in for the Gw2 API, only active with the 'gw2-standin' profile. It serves
+ * the JSON fixtures from the 'gw2_standin' resource folder for every endpoint the bot uses, so the whole
+ * gw2api layer (caching, rate limiting, circuit breakers, etc...) can be exercised and load tested offline.
+ * <p>
+ * Latency, server errors and throttling (429) can be injected, see the 'gw2_standin' settings. Any API
+ * key is accepted, but account and character endpoints respond with 401 without one.
+ */
+@Component
+@Profile("gw2-standin")
+@Slf4j
+public class Gw2StandInServer {
+
+    private static final Pattern CHARACTER_INVENTORY = Pattern.compile("^/v2/characters/([^/]+)/inventory$");
+    private static final Pattern WORLD_BY_ID = Pattern.compile("^/v2/worlds/(\\d+)$");
+    private static final Pattern MATCH_BY_ID = Pattern.compile("^/v2/wvw/matches/(\\d-\\d)$");
+
+    /**
+     * Sub-resources of /v2/wvw/matches, and the fields of the match they contain.
+     */
+    private static final Map<String, List<String>> MATCH_SUB_RESOURCES = Map.of(
+            "/v2/wvw/matches/overview", List.of("id", "worlds", "all_worlds", "start_time", "end_time"),
+            "/v2/wvw/matches/scores", List.of("id", "scores", "victory_points"),
+            "/v2/wvw/matches/stats", List.of("id", "deaths", "kills")
+    );
+
+    @Value("${com.gaspar.modwvwbot.gw2_standin.port}")
+    private int port;
+
+    @Value("${com.gaspar.modwvwbot.gw2_standin.threads}")
+    private int threads;
+
+    @Value("${com.gaspar.modwvwbot.gw2_standin.latency_millis}")
+    private long latencyMillis;
+
+    @Value("${com.gaspar.modwvwbot.gw2_standin.latency_jitter_millis}")
+    private long latencyJitterMillis;
+
+    /**
+     * Ratio of requests that get a 500 response, between 0 and 1.
+     */
+    @Value("${com.gaspar.modwvwbot.gw2_standin.error_rate}")
+    private double errorRate;
+
+    /**
+     * Ratio of requests that get a 429 response, between 0 and 1.
+     */
+    @Value("${com.gaspar.modwvwbot.gw2_standin.throttle_rate}")
+    private double throttleRate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Fixture file name - content pairs.
+     */
+    private final Map<String, JsonNode> fixtures = new HashMap<>();
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    @PostConstruct
+    public void start() throws IOException {
+        for(String fixture: List.of("account", "account_bank", "account_materials", "account_wallet",
+                "account_legendaryarmory", "characters", "worlds", "wvw_matches", "wvw_ranks")) {
+            try(InputStream input = new ClassPathResource("gw2_standin/" + fixture + ".json").getInputStream()) {
+                fixtures.put(fixture, objectMapper.readTree(input));
+            }
+        }
+        serverExecutor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/v2/", this::handle);
+        server.setExecutor(serverExecutor);
+        server.start();
+        log.warn("Gw2 API stand-in server is running on port {}, the real Gw2 API is NOT used! Latency: {} ms (+{} ms), " +
+                "error rate: {}, throttle rate: {}", port, latencyMillis, latencyJitterMillis, errorRate, throttleRate);
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            injectLatency();
+            double random = ThreadLocalRandom.current().nextDouble();
+            if(random < throttleRate) {
+                respond(exchange, 429, textNode("too many requests"));
+            } else if(random < throttleRate + errorRate) {
+                respond(exchange, 500, textNode("ErrInternal"));
+            } else {
+                route(exchange);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void injectLatency() throws InterruptedException {
+        long jitter = latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0;
+        if(latencyMillis + jitter > 0) {
+            Thread.sleep(latencyMillis + jitter);
+        }
+    }
+
+    /**
+     * Find the response of a request, in the same way the Gw2 API would.
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        log.debug("Gw2 API stand-in server received request to '{}'.", path);
+        boolean authenticated = path.startsWith("/v2/account") || path.startsWith("/v2/characters");
+        if(authenticated && !query.containsKey("access_token")) {
+            respond(exchange, 401, textNode("Invalid access token"));
+            return;
+        }
+        switch (path) {
+            case "/v2/account":
+            case "/v2/account/bank":
+            case "/v2/account/materials":
+            case "/v2/account/wallet":
+            case "/v2/account/legendaryarmory":
+                respond(exchange, 200, fixtures.get(path.substring("/v2/".length()).replace('/', '_')));
+                return;
+            case "/v2/characters":
+                respond(exchange, 200, "all".equals(query.get("ids")) ? fixtures.get("characters") : characterNames());
+                return;
+            case "/v2/worlds":
+                respond(exchange, 200, filterByIds(fixtures.get("worlds"), query.get("ids")));
+                return;
+            case "/v2/wvw/ranks":
+                respond(exchange, 200, filterByIds(fixtures.get("wvw_ranks"), query.get("ids")));
+                return;
+            case "/v2/wvw/matches":
+                if(query.containsKey("world")) {
+                    respondWithElement(exchange, findMatchOfWorld(Integer.parseInt(query.get("world"))));
+                } else {
+                    respond(exchange, 200, filterByIds(fixtures.get("wvw_matches"), query.get("ids")));
+                }
+                return;
+        }
+        if(MATCH_SUB_RESOURCES.containsKey(path)) {
+            respondWithMatchSubResource(exchange, MATCH_SUB_RESOURCES.get(path), query);
+            return;
+        }
+        Matcher matcher;
+        if((matcher = CHARACTER_INVENTORY.matcher(path)).matches()) {
+            var character = findElement(fixtures.get("characters"), "name", matcher.group(1));
+            respondWithElement(exchange, character.map(c -> objectMapper.createObjectNode().set("bags", c.get("bags"))));
+        } else if((matcher = WORLD_BY_ID.matcher(path)).matches()) {
+            respondWithElement(exchange, findElement(fixtures.get("worlds"), "id", matcher.group(1)));
+        } else if((matcher = MATCH_BY_ID.matcher(path)).matches()) {
+            respondWithElement(exchange, findElement(fixtures.get("wvw_matches"), "id", matcher.group(1)));
+        } else {
+            respond(exchange, 404, textNode("no such endpoint"));
+        }
+    }
+
+    /**
+     * Respond with some fields of the matches selected by the 'world', 'id' or 'ids' query parameter.
+     */
+    private void respondWithMatchSubResource(HttpExchange exchange, List<String> fields, Map<String, String> query) throws IOException {
+        if(query.containsKey("world")) {
+            respondWithElement(exchange, findMatchOfWorld(Integer.parseInt(query.get("world"))).map(m -> selectFields(m, fields)));
+        } else if(query.containsKey("id")) {
+            respondWithElement(exchange, findElement(fixtures.get("wvw_matches"), "id", query.get("id")).map(m -> selectFields(m, fields)));
+        } else {
+            ArrayNode matches = objectMapper.createArrayNode();
+            filterByIds(fixtures.get("wvw_matches"), query.get("ids")).forEach(m -> matches.add(selectFields(m, fields)));
+            respond(exchange, 200, matches);
+        }
+    }
+
+    private JsonNode selectFields(JsonNode element, List<String> fields) {
+        var selected = objectMapper.createObjectNode();
+        for(String field: fields) {
+            if(element.has(field)) selected.set(field, element.get(field));
+        }
+        return selected;
+    }
+
+    private JsonNode characterNames() {
+        ArrayNode names = objectMapper.createArrayNode();
+        fixtures.get("characters").forEach(character -> names.add(character.get("name")));
+        return names;
+    }
+
+    /**
+     * Select the elements of an array by the 'ids' query parameter: 'all', or IDs separated by commas.
+     */
+    private JsonNode filterByIds(JsonNode elements, String ids) {
+        if(ids == null || "all".equals(ids)) return elements;
+        Set<String> requestedIds = new HashSet<>(Arrays.asList(ids.split(",")));
+        ArrayNode filtered = objectMapper.createArrayNode();
+        elements.forEach(element -> {
+            if(requestedIds.contains(element.get("id").asText())) filtered.add(element);
+        });
+        return filtered;
+    }
+
+    private Optional<JsonNode> findElement(JsonNode elements, String field, String value) {
+        for(JsonNode element: elements) {
+            if(element.get(field).asText().equals(value)) return Optional.of(element);
+        }
+        return Optional.empty();
+    }
+
+    private Optional<JsonNode> findMatchOfWorld(int worldId) {
+        for(JsonNode match: fixtures.get("wvw_matches")) {
+            for(JsonNode side: match.get("all_worlds")) {
+                for(JsonNode id: side) {
+                    if(id.asInt() == worldId) return Optional.of(match);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void respondWithElement(HttpExchange exchange, Optional<? extends JsonNode> element) throws IOException {
+        if(element.isPresent()) {
+            respond(exchange, 200, element.get());
+        } else {
+            respond(exchange, 404, textNode("no such id"));
+        }
+    }
+
+    private JsonNode textNode(String text) {
+        return objectMapper.createObjectNode().put("text", text);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if(rawQuery == null) return query;
+        for(String parameter: rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            if(separator < 0) continue;
+            query.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                    URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+}
@@ -2,49 +2,39 @@ package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.AmountCounter;
 import com.gaspar.modwvwbot.misc.AmountUtils;
-import com.gaspar.modwvwbot.model.Amount;
-import com.gaspar.modwvwbot.model.gw2api.ItemResponse;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Service that queries an accounts material storage though the Gw2 API.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2StorageService {
 
-    private final RestTemplate restTemplate;
-
-    public Gw2StorageService(@Qualifier("gw2api") RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final Gw2AccountCache gw2AccountCache;
 
     /**
-     * Counts the items of interest in the material storage of an account.
+     * Counts the items of interest in the material storage of an account. The future fails with
+     * {@link Gw2ApiException} or {@link UnauthorizedException}.
      * @param apiKey API key.
-     * @param amounts Items of interest and how many of them are found. This list is modified.
-     * @throws Gw2ApiException If the API fails to respond.
-     * @throws UnauthorizedException If the API key has no permissions.
+     * @param counter Items of interest and how many of them are found. This counter is modified.
+     * @param refresh If true, the cached response is not used.
+     * @param deadline The request is abandoned when this passes.
      */
-    public void countItemsInStorage(String apiKey, List<Amount> amounts) throws Gw2ApiException, UnauthorizedException {
+    public CompletableFuture<Void> countItemsInStorageAsync(String apiKey, AmountCounter counter, boolean refresh, Deadline deadline) {
         String storageUrl = "/v2/account/materials?access_token=" + apiKey;
-        try {
-            var response = restTemplate.getForEntity(storageUrl, ItemResponse[].class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-            AmountUtils.countItemArray(amounts, response.getBody());
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.ACCOUNT_MATERIALS, storageUrl, refresh, deadline,
+                parser -> AmountUtils.countJsonStream(counter, parser, "count"))
+                .thenAccept(matches -> log.debug("Found {} items of interest in the material storage.", matches));
     }
 
 }
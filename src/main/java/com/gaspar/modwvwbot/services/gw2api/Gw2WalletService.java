@@ -2,48 +2,38 @@ package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.misc.AmountCounter;
 import com.gaspar.modwvwbot.misc.AmountUtils;
-import com.gaspar.modwvwbot.model.Amount;
-import com.gaspar.modwvwbot.model.gw2api.CurrencyResponse;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Queries Gw2 API endpoint of the account wallet.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2WalletService {
 
-    private final RestTemplate restTemplate;
-
-    public Gw2WalletService(@Qualifier("gw2api") RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
-    }
+    private final Gw2AccountCache gw2AccountCache;
 
     /**
-     * Count some currencies in the account walled.
+     * Count some currencies in the account wallet. The future fails with
+     * {@link Gw2ApiException} or {@link UnauthorizedException}.
      * @param apiKey API key.
-     * @param amounts Currencies of interest.
-     * @throws Gw2ApiException If the API fails to respond.
-     * @throws UnauthorizedException If the API key has no permissions.
+     * @param counter Currencies of interest.
+     * @param refresh If true, the cached response is not used.
+     * @param deadline The request is abandoned when this passes.
      */
-    public void countCurrenciesInWallet(String apiKey, List<Amount> amounts) throws Gw2ApiException, UnauthorizedException {
+    public CompletableFuture<Void> countCurrenciesInWalletAsync(String apiKey, AmountCounter counter, boolean refresh, Deadline deadline) {
         String walletUrl = "/v2/account/wallet?access_token=" + apiKey;
-        try {
-            var response = restTemplate.getForEntity(walletUrl, CurrencyResponse[].class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-            AmountUtils.countCurrencyArray(amounts, response.getBody());
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+        return gw2AccountCache.read(apiKey, Gw2Endpoint.ACCOUNT_WALLET, walletUrl, refresh, deadline,
+                parser -> AmountUtils.countJsonStream(counter, parser, "value"))
+                .thenAccept(matches -> log.debug("Found {} currencies of interest in the wallet.", matches));
     }
 }
@@ -2,77 +2,207 @@ package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
 import com.gaspar.modwvwbot.exception.HomeWorldNotFoundException;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.CatalogWorld;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
 import com.gaspar.modwvwbot.model.gw2api.HomeWorldResponse;
+import com.gaspar.modwvwbot.repository.CatalogWorldRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
- * Queries GW2 API: /worlds
+ * Queries GW2 API: /worlds. Keeps an in-memory directory of all worlds, so that world names
+ * can be resolved without calling the API every time. The directory is saved to the database when
+ * it's refreshed, and loaded from there at startup.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2WorldService {
 
-    private final RestTemplate restTemplate;
+    private final Gw2ApiGateway gw2ApiGateway;
+    private final CatalogWorldRepository catalogWorldRepository;
+
+    /**
+     * World ID - world pairs. Filled from /worlds?ids=all and refreshed in the background. Worlds
+     * missing from here are fetched in one batch when they are requested.
+     */
+    private final Map<Integer, HomeWorldResponse> worldDirectory = new ConcurrentHashMap<>();
+
+    /**
+     * The same worlds as in {@link #worldDirectory}, by their names.
+     */
+    private final Map<String, HomeWorldResponse> worldsByName = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for(CatalogWorld catalogWorld: catalogWorldRepository.findAll()) {
+            addToWorldDirectory(catalogWorld.toResponse());
+        }
+        log.info("Loaded {} worlds from the database.", worldDirectory.size());
+    }
 
-    public Gw2WorldService(@Qualifier("gw2api") RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    /**
+     * Reload the world directory with all worlds. Runs at startup and then periodically. In case
+     * the API fails, the previous content of the directory is kept.
+     */
+    @Scheduled(fixedDelayString = "${com.gaspar.modwvwbot.world_directory_refresh_minutes}", timeUnit = TimeUnit.MINUTES)
+    public void refreshWorldDirectory() {
+        try {
+            var homeWorlds = fetchAllWorlds(Gw2RequestPriority.BACKGROUND);
+            addToWorldDirectory(homeWorlds);
+            catalogWorldRepository.saveAll(Arrays.stream(homeWorlds)
+                    .map(CatalogWorld::fromResponse)
+                    .collect(Collectors.toList()));
+            log.debug("World directory refreshed, it has {} worlds.", worldDirectory.size());
+        } catch (Exception e) {
+            log.warn("Failed to refresh world directory, keeping the previous {} worlds.", worldDirectory.size(), e);
+        }
     }
 
     /**
-     * Query the API for a home world.
+     * Find a home world by name. Worlds are searched in the world directory, the API is only called
+     * if the world is not there (for example the directory could not be filled yet).
      * @param name Name of the world.
      * @return {@link HomeWorldResponse}.
      * @throws Gw2ApiException In case of GW2 api failed to answer.
      * @throws HomeWorldNotFoundException If this world was not found.
      */
     public HomeWorldResponse fetchHomeWorldByName(String name) throws Gw2ApiException, HomeWorldNotFoundException {
-        String getAllWorldsEndpoint = "/v2/worlds?ids=all";
-        log.debug("GW2 API endpoint for fetching all worlds is: {}", getAllWorldsEndpoint);
+        HomeWorldResponse knownWorld = worldsByName.get(name);
+        if(knownWorld != null) return knownWorld;
+        log.debug("World '{}' is not in the world directory, fetching all worlds...", name);
+        addToWorldDirectory(fetchAllWorlds(Gw2RequestPriority.INTERACTIVE));
+        knownWorld = worldsByName.get(name);
+        if(knownWorld != null) return knownWorld;
+        throw new HomeWorldNotFoundException("No world with name: " + name);
+    }
 
-        ResponseEntity<HomeWorldResponse[]> response;
-        try {
-            response = restTemplate.getForEntity(getAllWorldsEndpoint, HomeWorldResponse[].class);
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
-        }
+    /**
+     * Query the GW2 API for one home world with the given VALID id. There is no fallback to the world directory,
+     * so a failure is not hidden, but the response may still come from the cache of the {@link Gw2Endpoint#WORLDS}
+     * endpoint, so the population can be as old as its time to live.
+     * @param priority Use {@link Gw2RequestPriority#BACKGROUND} from scheduled jobs.
+     * @throws Gw2ApiException If the API failed to respond.
+     */
+    public HomeWorldResponse fetchHomeWorldById(@NonNull Integer id, Gw2RequestPriority priority) throws Gw2ApiException {
+        String getByIdEndpoint = "/v2/worlds/" + id;
+        log.debug("GW2 API endpoint for getting world with id '{}' is: {}", id, getByIdEndpoint);
+        return gw2ApiGateway.get(Gw2Endpoint.WORLDS, getByIdEndpoint, HomeWorldResponse.class, priority);
+    }
+
+    /**
+     * Query the GW2 API for one home world with the given VALID id, asynchronously. If the API fails, the world
+     * is taken from the world directory, if it's there. The future fails with {@link Gw2ApiException} if the
+     * world is not in the directory either.
+     */
+    public CompletableFuture<HomeWorldResponse> fetchHomeWorldByIdAsync(@NonNull Integer id) {
+        String getByIdEndpoint = "/v2/worlds/" + id;
+        return gw2ApiGateway.getAsync(Gw2Endpoint.WORLDS, getByIdEndpoint, HomeWorldResponse.class)
+                .handle((homeWorld, error) -> {
+                    if(error == null) return homeWorld;
+                    Throwable cause = FutureUtils.unwrap(error);
+                    if(cause instanceof Gw2ApiException) return getKnownWorldOrThrow(id, (Gw2ApiException) cause);
+                    throw new CompletionException(cause);
+                });
+    }
 
-        HomeWorldResponse[] homeWorlds = response.getBody();
-        if(homeWorlds == null) {
-            log.warn("GW2 API failed to send world data, empty response.");
-            throw new Gw2ApiException("No response when fetching worlds from /worlds?ids=all");
+    /**
+     * Fallback for when the API failed: get the last known state of the world from the directory.
+     * @param failure What the API failed with, thrown if the world is not known.
+     */
+    private HomeWorldResponse getKnownWorldOrThrow(Integer id, Gw2ApiException failure) throws Gw2ApiException {
+        HomeWorldResponse knownWorld = worldDirectory.get(id);
+        if(knownWorld == null) throw failure;
+        log.warn("Failed to fetch world with id '{}', using the world directory instead.", id);
+        return knownWorld;
+    }
+
+    /**
+     * Resolve a group of worlds from the world directory. Worlds that are not in the directory
+     * yet are fetched with one /worlds?ids=a,b,c request and added to the directory.
+     * @param ids VALID world IDs.
+     * @param priority Rate limiter lane of the request, if one is needed.
+     * @return World ID - world pairs, for all requested IDs.
+     * @throws Gw2ApiException If some worlds were missing, and the API failed to respond.
+     */
+    public Map<Integer, HomeWorldResponse> resolveWorlds(Collection<Integer> ids, Gw2RequestPriority priority) throws Gw2ApiException {
+        Set<Integer> missingIds = findMissingWorlds(ids);
+        if(!missingIds.isEmpty()) {
+            log.debug("Worlds {} are not in the world directory, fetching them...", missingIds);
+            addToWorldDirectory(fetchWorldsByIds(missingIds, priority));
         }
+        return collectWorlds(ids);
+    }
+
+    private Set<Integer> findMissingWorlds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(id -> !worldDirectory.containsKey(id))
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private void addToWorldDirectory(HomeWorldResponse[] homeWorlds) {
         for(HomeWorldResponse homeWorld: homeWorlds) {
-            if(homeWorld.getName().equals(name)) {
-                return homeWorld;
-            }
+            addToWorldDirectory(homeWorld);
         }
-        throw new HomeWorldNotFoundException("No world with name: " + name);
+    }
+
+    private void addToWorldDirectory(HomeWorldResponse homeWorld) {
+        worldDirectory.put(homeWorld.getId(), homeWorld);
+        worldsByName.put(homeWorld.getName(), homeWorld);
     }
 
     /**
-     * Query the GW2 API for one home world with the given VALID id.
-     * @throws Gw2ApiException If the API failed to respond.
+     * Get the requested worlds from the directory.
+     * @throws Gw2ApiException If some world is still not in the directory.
      */
-    public HomeWorldResponse fetchHomeWorldById(@NonNull Integer id) throws Gw2ApiException {
-        String getByIdEndpoint = "/v2/worlds/" + id;
-        log.debug("GW2 API endpoint for getting world with id '{}' is: {}", id, getByIdEndpoint);
-        try {
-            var response = restTemplate.getForEntity(getByIdEndpoint, HomeWorldResponse.class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-            return response.getBody();
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
+    private Map<Integer, HomeWorldResponse> collectWorlds(Collection<Integer> ids) throws Gw2ApiException {
+        Map<Integer, HomeWorldResponse> worlds = new HashMap<>();
+        for(Integer id: ids) {
+            HomeWorldResponse homeWorld = worldDirectory.get(id);
+            if(homeWorld == null) throw new Gw2ApiException("World with id " + id + " was not returned by the API!");
+            worlds.put(id, homeWorld);
         }
+        return worlds;
+    }
+
+    /**
+     * Fetch all worlds from the API: /worlds?ids=all
+     * @param priority Use {@link Gw2RequestPriority#BACKGROUND} from scheduled jobs.
+     * @throws Gw2ApiException If the API failed to respond.
+     */
+    private HomeWorldResponse[] fetchAllWorlds(Gw2RequestPriority priority) throws Gw2ApiException {
+        String getAllWorldsEndpoint = "/v2/worlds?ids=all";
+        log.debug("GW2 API endpoint for fetching all worlds is: {}", getAllWorldsEndpoint);
+        return gw2ApiGateway.get(Gw2Endpoint.WORLDS, getAllWorldsEndpoint, HomeWorldResponse[].class, priority);
+    }
+
+    /**
+     * Fetch some worlds from the API in one request: /worlds?ids=a,b,c
+     * @param priority Use {@link Gw2RequestPriority#BACKGROUND} from scheduled jobs.
+     * @throws Gw2ApiException If the API failed to respond.
+     */
+    private HomeWorldResponse[] fetchWorldsByIds(Collection<Integer> ids, Gw2RequestPriority priority) throws Gw2ApiException {
+        return gw2ApiGateway.get(Gw2Endpoint.WORLDS, worldsByIdsUrl(ids), HomeWorldResponse[].class, priority);
+    }
+
+    private String worldsByIdsUrl(Collection<Integer> ids) {
+        String idsParameter = ids.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(","));
+        return "/v2/worlds?ids=" + idsParameter;
     }
 
 }
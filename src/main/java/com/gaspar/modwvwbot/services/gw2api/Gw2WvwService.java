@@ -1,88 +1,125 @@
 package com.gaspar.modwvwbot.services.gw2api;
 
 import com.gaspar.modwvwbot.exception.Gw2ApiException;
-import com.gaspar.modwvwbot.model.gw2api.WvwRank;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import com.gaspar.modwvwbot.model.gw2api.HomeWorldResponse;
 import com.gaspar.modwvwbot.model.matchup.WvwColor;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupReport;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupResponse;
 import com.gaspar.modwvwbot.model.matchup.WvwMatchupSide;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.ResourceAccessException;
-import org.springframework.web.client.RestTemplate;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
- * Queries Gw2 API wvw endpoint.
+ * Queries Gw2 API wvw endpoint. Matchups are not fetched from /wvw/matches, which contains every map, objective and
+ * skirmish, but from its lighter overview, scores and stats sub-resources.
  */
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class Gw2WvwService {
 
-    private final RestTemplate restTemplate;
-    private final Gw2WorldService gw2WorldService;
+    private static final String MATCHES_OVERVIEW_URL = "/v2/wvw/matches/overview";
+    private static final String MATCHES_SCORES_URL = "/v2/wvw/matches/scores";
+    private static final String MATCHES_STATS_URL = "/v2/wvw/matches/stats";
 
-    public Gw2WvwService(@Qualifier("gw2api") RestTemplate restTemplate, Gw2WorldService gw2WorldService) {
-        this.restTemplate = restTemplate;
-        this.gw2WorldService = gw2WorldService;
-    }
+    private final Gw2ApiGateway gw2ApiGateway;
+    private final Gw2WorldService gw2WorldService;
 
     /**
-     * Creates a {@link WvwMatchupReport} from a matchup ID.
+     * Creates {@link WvwMatchupReport}s of every matchup of every region. The overview, scores and stats of
+     * all matchups are requested in parallel, one request each. World names are resolved at once for all matchups.
+     * @param priority Rate limiter lane of the requests.
+     * @throws Gw2ApiException If the API failed to answer.
      */
-    public WvwMatchupReport createMatchupReport(String matchupId) {
-        String matchupUrl = "/v2/wvw/matches/" + matchupId;
-        return getMatchupReport(matchupUrl);
+    public List<WvwMatchupReport> createAllMatchupReports(Gw2RequestPriority priority) throws Gw2ApiException {
+        log.debug("Getting all Wvw matchups from the overview, scores and stats endpoints.");
+        var overviewsFuture = gw2ApiGateway.getAsync(Gw2Endpoint.WVW_MATCHES_OVERVIEW,
+                MATCHES_OVERVIEW_URL + "?ids=all", WvwMatchupResponse[].class, priority);
+        var scoresFuture = gw2ApiGateway.getAsync(Gw2Endpoint.WVW_MATCHES_SCORES,
+                MATCHES_SCORES_URL + "?ids=all", WvwMatchupResponse[].class, priority);
+        var statsFuture = gw2ApiGateway.getAsync(Gw2Endpoint.WVW_MATCHES_STATS,
+                MATCHES_STATS_URL + "?ids=all", WvwMatchupResponse[].class, priority);
+        var scores = indexByMatchId(FutureUtils.join(scoresFuture));
+        var stats = indexByMatchId(FutureUtils.join(statsFuture));
+        List<WvwMatchupResponse> responses = new ArrayList<>();
+        for(WvwMatchupResponse overview: FutureUtils.join(overviewsFuture)) {
+            var matchScores = scores.get(overview.getMatchId());
+            var matchStats = stats.get(overview.getMatchId());
+            if(matchScores == null || matchStats == null) {
+                throw new Gw2ApiException("Scores or stats of matchup '" + overview.getMatchId() + "' are missing.");
+            }
+            responses.add(WvwMatchupResponse.merge(overview, matchScores, matchStats));
+        }
+        List<Integer> worldIds = new ArrayList<>();
+        for(WvwMatchupResponse response: responses) {
+            worldIds.addAll(getWorldIds(response));
+        }
+        var worlds = gw2WorldService.resolveWorlds(worldIds, priority);
+        List<WvwMatchupReport> reports = new ArrayList<>();
+        for(WvwMatchupResponse response: responses) {
+            reports.add(createReportFromResponse(response, worlds));
+        }
+        return reports;
     }
 
-    /**
-     * Creates a {@link WvwMatchupReport} of the current matchup of a world.
-     * @param homeWorldId ID of the world.
-     * @return Report.
-     * @throws Gw2ApiException If the API failed to answer.
-     */
-    public WvwMatchupReport createMatchupReport(int homeWorldId) throws Gw2ApiException {
-        String matchupUrl = "/v2/wvw/matches?world=" + homeWorldId;
-        return getMatchupReport(matchupUrl);
+    private Map<String, WvwMatchupResponse> indexByMatchId(WvwMatchupResponse[] responses) {
+        Map<String, WvwMatchupResponse> index = new HashMap<>();
+        for(WvwMatchupResponse response: responses) {
+            index.put(response.getMatchId(), response);
+        }
+        return index;
     }
 
     /**
-     * Fetches a wvw matchup report.
-     * @param matchupUrl URL used to get the report.
+     * Get the IDs of every world in the matchup.
      */
-    private WvwMatchupReport getMatchupReport(String matchupUrl) {
-        log.debug("Getting Wvw matchup report from: {}", matchupUrl);
-        ResponseEntity<WvwMatchupResponse> response;
-        try {
-            response = restTemplate.getForEntity(matchupUrl, WvwMatchupResponse.class);
-            if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-        } catch (ResourceAccessException e) {
-            log.error("Gw2 API failure.", e);
-            throw new Gw2ApiException(e);
+    private List<Integer> getWorldIds(WvwMatchupResponse response) {
+        var allWorlds = response.getAllWorlds();
+        List<Integer> worldIds = new ArrayList<>();
+        for(WvwColor color: WvwColor.values()) {
+            worldIds.addAll(allWorlds.getByColor(color));
         }
+        return worldIds;
+    }
 
-        var red = createSideFromResponse(response.getBody(), WvwColor.red);
-        var blue = createSideFromResponse(response.getBody(), WvwColor.blue);
-        var green = createSideFromResponse(response.getBody(), WvwColor.green);
+    /**
+     * Build the report from the API response.
+     * @param response API matchup response.
+     * @param worlds Already resolved worlds of the matchup.
+     */
+    private WvwMatchupReport createReportFromResponse(WvwMatchupResponse response, Map<Integer, HomeWorldResponse> worlds) {
+        var red = createSideFromResponse(response, WvwColor.red, worlds);
+        var blue = createSideFromResponse(response, WvwColor.blue, worlds);
+        var green = createSideFromResponse(response, WvwColor.green, worlds);
         //get tier from ID
-        String id = response.getBody().getMatchId();
+        String id = response.getMatchId();
         int tier = Integer.parseInt(id.split("-")[1]);
-        return new WvwMatchupReport(List.of(red, blue, green), tier);
+        return new WvwMatchupReport(id, List.of(red, blue, green), tier);
     }
 
     /**
      * Extract details of one side from the response.
      * @param response API matchup response.
      * @param color Color of the side.
-     * @throws Gw2ApiException If API failed to return world data.
+     * @param worlds Already resolved worlds of the matchup.
      */
-    private WvwMatchupSide createSideFromResponse(WvwMatchupResponse response, WvwColor color) throws Gw2ApiException {
+    private WvwMatchupSide createSideFromResponse(
+            WvwMatchupResponse response,
+            WvwColor color,
+            Map<Integer, HomeWorldResponse> worlds
+    ) {
         //names of the worlds (main world is the last)
-        var names = getWorldNames(response.getAllWorlds().getByColor(color));
+        var names = getWorldNames(response.getAllWorlds().getByColor(color), worlds);
         int kills = response.getKills().getByColor(color);
         int deaths = response.getDeaths().getByColor(color);
         float kdRatio = (float)kills / deaths;
@@ -91,8 +128,8 @@ public class Gw2WvwService {
 
         return WvwMatchupSide.builder()
                 .color(color)
-                .worldNames(names)
-                .worldIds(response.getAllWorlds().getByColor(color))
+                .worldNames(List.copyOf(names))
+                .worldIds(List.copyOf(response.getAllWorlds().getByColor(color)))
                 .killCount(kills)
                 .deathCount(deaths)
                 .victoryPoints(victoryPoints)
@@ -103,21 +140,12 @@ public class Gw2WvwService {
     /**
      * Get a list of world names based on world IDs.
      * @param worldIds World IDs.
+     * @param worlds Resolved worlds, must contain all {@code worldIds}.
      */
-    private List<String> getWorldNames(List<Integer> worldIds) throws Gw2ApiException {
+    private List<String> getWorldNames(List<Integer> worldIds, Map<Integer, HomeWorldResponse> worlds) {
         return worldIds.stream()
-                .map(id -> gw2WorldService.fetchHomeWorldById(id).getName())
+                .map(id -> worlds.get(id).getName())
                 .collect(Collectors.toList());
     }
 
-    /**
-     * Get all {@link WvwRank}s from the API.
-     */
-    public WvwRank[] getWvwRanks() throws Gw2ApiException {
-        String endpoint = "/v2/wvw/ranks?ids=all";
-        var response = restTemplate.getForEntity(endpoint, WvwRank[].class);
-        if(response.getBody() == null) throw new Gw2ApiException("Response body was null!");
-        return response.getBody();
-    }
-
 }
@@ -0,0 +1,102 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import com.gaspar.modwvwbot.model.matchup.WvwSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link WvwSnapshot} of every WvW matchup in memory. It is fetched with one bulk request
+ * and refreshed in the background, so the matchup commands of all guilds are answered from memory.
+ * <p>
+ * The snapshot is the last known good state: when the API fails (for example after reset), the
+ * old snapshot is served as stale, and the refresh is retried until it succeeds.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class Gw2WvwSnapshotService {
+
+    @Value("${com.gaspar.modwvwbot.wvw_snapshot.refresh_seconds}")
+    private long refreshSeconds;
+
+    @Value("${com.gaspar.modwvwbot.wvw_snapshot.retry_seconds}")
+    private long retrySeconds;
+
+    private final Gw2WvwService gw2WvwService;
+
+    /**
+     * Latest snapshot, null until the first successful fetch.
+     */
+    private volatile WvwSnapshot snapshot;
+
+    /**
+     * If the last refresh of the snapshot failed. A refresh that is still running does not make the snapshot stale.
+     */
+    private volatile boolean refreshFailing;
+
+    /**
+     * Reload the snapshot with all matchups, if it's older than the refresh interval. Runs at startup, and
+     * then with the shorter retry interval, so a failed refresh is retried soon. In case the API fails, the
+     * previous snapshot is kept.
+     */
+    @Scheduled(fixedDelayString = "${com.gaspar.modwvwbot.wvw_snapshot.retry_seconds}", timeUnit = TimeUnit.SECONDS)
+    public void revalidateSnapshot() {
+        WvwSnapshot current = snapshot;
+        if(current != null && !current.isOlderThan(Duration.ofSeconds(refreshSeconds))) {
+            return;
+        }
+        try {
+            snapshot = createSnapshot(Gw2RequestPriority.BACKGROUND);
+            refreshFailing = false;
+            log.debug("Wvw snapshot refreshed, it has {} matchups.", snapshot.getMatchupCount());
+        } catch (Exception e) {
+            refreshFailing = true;
+            if(current == null) {
+                log.warn("Failed to create the Wvw snapshot, retrying in {} seconds.", retrySeconds, e);
+            } else {
+                log.warn("Failed to refresh the Wvw snapshot, keeping the one from {}. Retrying in {} seconds.",
+                        current.getCreatedAt(), retrySeconds, e);
+            }
+        }
+    }
+
+    /**
+     * Checks if a snapshot is stale: it should have been refreshed already, but the last refresh failed.
+     */
+    public boolean isStale(WvwSnapshot snapshot) {
+        return refreshFailing && snapshot.isOlderThan(Duration.ofSeconds(refreshSeconds));
+    }
+
+    /**
+     * Get the latest snapshot. If there is none yet, because the API failed since startup, it's created now.
+     * @throws Gw2ApiException If there is no snapshot, and the API failed to answer.
+     */
+    public WvwSnapshot getSnapshot() throws Gw2ApiException {
+        WvwSnapshot current = snapshot;
+        if(current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if(snapshot == null) {
+                log.info("There is no Wvw snapshot yet, creating it for a command.");
+                snapshot = createSnapshot(Gw2RequestPriority.INTERACTIVE);
+                refreshFailing = false;
+            }
+            return snapshot;
+        }
+    }
+
+    private WvwSnapshot createSnapshot(Gw2RequestPriority priority) throws Gw2ApiException {
+        var reports = gw2WvwService.createAllMatchupReports(priority);
+        return new WvwSnapshot(reports, Instant.now());
+    }
+}
@@ -0,0 +1,54 @@
+package com.gaspar.modwvwbot.misc;
+
+import com.gaspar.modwvwbot.model.Amount;
+import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AmountIndexTest {
+
+    private static WvwItemOrCurrency item(int id) {
+        return new WvwItemOrCurrency(id, "Item " + id, "emote", 0L);
+    }
+
+    @Test
+    public void testSlotOf() {
+        var items = IntStream.range(0, 100)
+                .mapToObj(i -> item(70000 + i * 16))
+                .collect(Collectors.toList());
+        var index = new AmountIndex(items);
+        for(int slot = 0; slot < items.size(); slot++) {
+            assertEquals(slot, index.slotOf(items.get(slot).getId()));
+        }
+        assertEquals(-1, index.slotOf(70001));
+        assertEquals(-1, index.slotOf(0));
+    }
+
+    @Test
+    public void testDuplicateId() {
+        assertThrows(IllegalArgumentException.class, () -> new AmountIndex(List.of(item(1), item(2), item(1))));
+    }
+
+    @Test
+    public void testCounter() {
+        var index = new AmountIndex(List.of(item(19678), item(93146)));
+        var counter = index.newCounter();
+        assertTrue(counter.add(93146, 3));
+        assertFalse(counter.add(12345, 7));
+        var other = index.newCounter();
+        other.add(19678, 2);
+        other.add(93146, 1);
+        counter.addAll(other);
+
+        List<Amount> amounts = counter.toAmounts();
+        assertEquals(19678, amounts.get(0).getItemOrCurrency().getId());
+        assertEquals(2, amounts.get(0).getAmount());
+        assertEquals(4, amounts.get(1).getAmount());
+        assertThrows(IllegalArgumentException.class, () -> counter.addAll(new AmountIndex(List.of(item(1))).newCounter()));
+    }
+}
@@ -0,0 +1,145 @@
+package com.gaspar.modwvwbot.misc;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gaspar.modwvwbot.exception.UnauthorizedException;
+import com.gaspar.modwvwbot.model.WvwItemOrCurrency;
+import com.gaspar.modwvwbot.model.gw2api.CurrencyResponse;
+import com.gaspar.modwvwbot.model.gw2api.InventoryResponse;
+import com.gaspar.modwvwbot.model.gw2api.ItemResponse;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the streamed counting with binding the same responses to objects, as the Gw2 API responses were read before.
+ */
+class AmountUtilsTest {
+
+    //same settings as the rest template
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final AmountIndex index = new AmountIndex(List.of(item(19678), item(93146), item(71581), item(15)));
+
+    private static WvwItemOrCurrency item(int id) {
+        return new WvwItemOrCurrency(id, "Item " + id, "emote", 0L);
+    }
+
+    /**
+     * Write JSON with single quotes, so it's readable here.
+     */
+    private static String json(String singleQuoted) {
+        return singleQuoted.replace('\'', '"');
+    }
+
+    private static final String BANK = json("[" +
+            "{'id':19678,'count':5,'binding':'Account'}," +
+            "null," +
+            "{'id':12345,'count':250}," +
+            "{'id':93146,'count':2,'upgrades':[24615],'infusions':[49424,49424],'skin':4321}," +
+            "null," +
+            "{'id':19678,'count':250,'stats':{'id':161,'attributes':{'Power':63,'Precision':45}}}" +
+            "]");
+
+    private static final String MATERIALS = json("[" +
+            "{'id':71581,'category':37,'binding':'Account','count':250}," +
+            "{'id':19678,'category':5,'count':0}," +
+            "{'id':24277,'category':5,'count':1234}" +
+            "]");
+
+    private static final String WALLET = json("[" +
+            "{'id':1,'value':100000}," +
+            "{'id':15,'value':1234}," +
+            "{'id':26,'value':57}" +
+            "]");
+
+    private static final String CHARACTERS = json("[" +
+            "{'name':'First','race':'Norn','equipment':[{'id':80248,'slot':'Helm','infusions':[49432],'stats':{'id':584,'attributes':{'Power':63}}}]," +
+            "'bags':[" +
+                "{'id':8932,'size':20,'inventory':[{'id':93146,'count':1,'binding':'Character','bound_to':'First'},null,{'id':19678,'count':3}]}," +
+                "null," +
+                "{'id':8933,'size':4,'inventory':[null,null,{'id':71581,'count':17,'upgrades':[24615]},null]}" +
+            "]," +
+            "'crafting':[{'discipline':'Armorsmith','rating':500,'active':true}]}," +
+            "{'name':'Second','bags':[null,{'id':8932,'size':20,'inventory':[{'id':71581,'count':3},{'id':555,'count':1}]}]," +
+            "'skills':{'pve':{'heal':5503,'utilities':[5502,5504,5505],'elite':5666}}}" +
+            "]");
+
+    private JsonParser parser(String json) throws IOException {
+        return objectMapper.getFactory().createParser(json);
+    }
+
+    @Test
+    public void testBankAndMaterials() throws IOException {
+        for(String json: List.of(BANK, MATERIALS)) {
+            var streamed = index.newCounter();
+            try(var parser = parser(json)) {
+                AmountUtils.countJsonStream(streamed, parser, "count");
+            }
+            var bound = index.newCounter();
+            AmountUtils.countItemArray(bound, objectMapper.readValue(json, ItemResponse[].class));
+            assertEquals(bound.toAmounts(), streamed.toAmounts());
+        }
+    }
+
+    @Test
+    public void testBankCounts() throws IOException {
+        var counter = index.newCounter();
+        try(var parser = parser(BANK)) {
+            assertEquals(3, AmountUtils.countJsonStream(counter, parser, "count"));
+        }
+        assertEquals(255, counter.getCount(index.slotOf(19678)));
+        assertEquals(2, counter.getCount(index.slotOf(93146)));
+    }
+
+    @Test
+    public void testWallet() throws IOException {
+        var streamed = index.newCounter();
+        try(var parser = parser(WALLET)) {
+            assertEquals(1, AmountUtils.countJsonStream(streamed, parser, "value"));
+        }
+        var bound = index.newCounter();
+        for(CurrencyResponse currency: objectMapper.readValue(WALLET, CurrencyResponse[].class)) {
+            bound.add(currency.getId(), currency.getAmount());
+        }
+        assertEquals(bound.toAmounts(), streamed.toAmounts());
+        assertEquals(1234, streamed.getCount(index.slotOf(15)));
+    }
+
+    @Test
+    public void testCharacters() throws IOException {
+        var streamed = index.newCounter();
+        try(var parser = parser(CHARACTERS)) {
+            assertEquals(2, AmountUtils.countCharactersJsonStream(streamed, parser));
+        }
+        var bound = index.newCounter();
+        for(InventoryResponse inventory: objectMapper.readValue(CHARACTERS, InventoryResponse[].class)) {
+            AmountUtils.countInInventory(bound, inventory);
+        }
+        assertEquals(bound.toAmounts(), streamed.toAmounts());
+        assertEquals(20, streamed.getCount(index.slotOf(71581)));
+        assertEquals(3, streamed.getCount(index.slotOf(19678)));
+        assertEquals(1, streamed.getCount(index.slotOf(93146)));
+    }
+
+    @Test
+    public void testCharactersWithoutBags() throws IOException {
+        //the API key has no inventories permission
+        String json = json("[{'name':'First','race':'Norn'}]");
+        try(var parser = parser(json)) {
+            assertThrows(UnauthorizedException.class, () -> AmountUtils.countCharactersJsonStream(index.newCounter(), parser));
+        }
+    }
+
+    @Test
+    public void testNotAnArray() throws IOException {
+        try(var parser = parser(json("{'text':'Invalid access token'}"))) {
+            assertThrows(IOException.class, () -> AmountUtils.countJsonStream(index.newCounter(), parser, "count"));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiClientException;
+import com.gaspar.modwvwbot.exception.Gw2ApiException;
+import com.gaspar.modwvwbot.exception.Gw2DeadlineExceededException;
+import com.gaspar.modwvwbot.misc.Deadline;
+import com.gaspar.modwvwbot.misc.FutureUtils;
+import com.gaspar.modwvwbot.model.gw2api.Gw2Endpoint;
+import com.gaspar.modwvwbot.model.gw2api.Gw2EndpointFamily;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class Gw2ApiGatewayTest {
+
+    private static final String URL = "/v2/account";
+
+    private RestTemplate restTemplate;
+
+    private Gw2CircuitBreaker circuitBreaker;
+
+    private Gw2RequestAborter requestAborter;
+
+    private Gw2ApiGateway gateway;
+
+    @BeforeEach
+    public void setUp() {
+        restTemplate = mock(RestTemplate.class);
+
+        var rateLimiter = new Gw2RateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "requestsPerSecond", 100.0);
+        ReflectionTestUtils.setField(rateLimiter, "burst", 100);
+        ReflectionTestUtils.setField(rateLimiter, "backgroundReserve", 10);
+        ReflectionTestUtils.setField(rateLimiter, "interactiveMaxWaitMillis", 100L);
+        ReflectionTestUtils.setField(rateLimiter, "backgroundMaxWaitMillis", 100L);
+        rateLimiter.init();
+
+        //opens after 2 failed calls, and lets a probe through right away
+        circuitBreaker = new Gw2CircuitBreaker();
+        ReflectionTestUtils.setField(circuitBreaker, "windowSize", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "minimumCalls", 2);
+        ReflectionTestUtils.setField(circuitBreaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(circuitBreaker, "slowCallRateThreshold", 1.0);
+        ReflectionTestUtils.setField(circuitBreaker, "slowCallMillis", 10000L);
+        ReflectionTestUtils.setField(circuitBreaker, "openSeconds", 0L);
+        circuitBreaker.init();
+
+        var metrics = new Gw2ApiMetrics(new SimpleMeterRegistry());
+        var hedgingPolicy = new Gw2HedgingPolicy(metrics);
+        ReflectionTestUtils.setField(hedgingPolicy, "enabled", false);
+
+        requestAborter = new Gw2RequestAborter();
+        gateway = new Gw2ApiGateway(restTemplate, Runnable::run, rateLimiter, circuitBreaker, metrics, hedgingPolicy, requestAborter);
+        ReflectionTestUtils.setField(gateway, "maxEntriesPerEndpoint", 10L);
+        gateway.init();
+    }
+
+    @Test
+    public void testUnexpectedExceptionEndsProbe() {
+        //for example the body could not be converted
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenThrow(new RestClientException("Conversion failed"));
+        assertThrows(Gw2ApiException.class, () -> gateway.get(Gw2Endpoint.ACCOUNT, URL, String.class));
+        assertThrows(Gw2ApiException.class, () -> gateway.get(Gw2Endpoint.ACCOUNT, URL, String.class));
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(Gw2EndpointFamily.ACCOUNT));
+
+        //the probe fails in the same way, the circuit must open again and not wait for the probe forever
+        assertThrows(Gw2ApiException.class, () -> gateway.get(Gw2Endpoint.ACCOUNT, URL, String.class));
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(Gw2EndpointFamily.ACCOUNT));
+
+        //next probe is let through, and closes the circuit
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenReturn(ResponseEntity.ok("{}"));
+        assertEquals("{}", gateway.get(Gw2Endpoint.ACCOUNT, URL, String.class));
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(Gw2EndpointFamily.ACCOUNT));
+    }
+
+    @Test
+    public void testClientErrorsDontOpenCircuit() {
+        //for example a deleted character
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenThrow(new Gw2ApiClientException("Not found", 404));
+        for(int i = 0; i < 4; i++) {
+            assertThrows(Gw2ApiClientException.class, () -> gateway.get(Gw2Endpoint.ACCOUNT, URL, String.class));
+        }
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(Gw2EndpointFamily.ACCOUNT));
+    }
+
+    @Test
+    public void testRequestAbortedAtDeadline() {
+        //like the request factory, and the HTTP client that waits for a slow response until it's aborted
+        when(restTemplate.getForEntity(anyString(), eq(String.class))).thenAnswer(invocation -> {
+            var request = new HttpGet(URL);
+            requestAborter.register(request);
+            long end = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while(!request.isAborted() && System.nanoTime() < end) {
+                Thread.sleep(5);
+            }
+            throw new ResourceAccessException("Socket closed");
+        });
+        var deadline = Deadline.after(Instant.now(), Duration.ofMillis(200));
+        var response = gateway.getAsync(Gw2Endpoint.ACCOUNT, URL, String.class, deadline);
+        assertThrows(Gw2DeadlineExceededException.class, () -> FutureUtils.join(response));
+        //not an API failure, and the circuit breaker permission was given back
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(Gw2EndpointFamily.ACCOUNT));
+        assertEquals(0, circuitBreaker.getCircuitStates().getCircuits().stream()
+                .filter(circuit -> circuit.getFamily().equals(Gw2EndpointFamily.ACCOUNT.name()))
+                .findFirst().orElseThrow().getRecordedCalls());
+    }
+}
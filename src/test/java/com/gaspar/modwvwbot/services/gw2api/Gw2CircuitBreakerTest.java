@@ -0,0 +1,206 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.exception.Gw2ApiUnavailableException;
+import com.gaspar.modwvwbot.model.gw2api.Gw2EndpointFamily;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Gw2CircuitBreakerTest {
+
+    private static final Gw2EndpointFamily FAMILY = Gw2EndpointFamily.ACCOUNT;
+
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private static final Duration SLOW = Duration.ofSeconds(10);
+
+    /**
+     * Window of 4 calls, opens at 50% failures (or 75% slow calls) once the window is full.
+     */
+    private Gw2CircuitBreaker createCircuitBreaker(long openSeconds) {
+        var circuitBreaker = new Gw2CircuitBreaker();
+        ReflectionTestUtils.setField(circuitBreaker, "windowSize", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "minimumCalls", 4);
+        ReflectionTestUtils.setField(circuitBreaker, "failureRateThreshold", 0.5);
+        ReflectionTestUtils.setField(circuitBreaker, "slowCallRateThreshold", 0.75);
+        ReflectionTestUtils.setField(circuitBreaker, "slowCallMillis", 5000L);
+        ReflectionTestUtils.setField(circuitBreaker, "openSeconds", openSeconds);
+        circuitBreaker.init();
+        return circuitBreaker;
+    }
+
+    /**
+     * Send a request through the circuit breaker with the given outcome.
+     */
+    private void call(Gw2CircuitBreaker circuitBreaker, boolean failed, Duration elapsed) {
+        var permission = circuitBreaker.acquirePermission(FAMILY);
+        if(failed) {
+            circuitBreaker.onFailure(permission, elapsed);
+        } else {
+            circuitBreaker.onSuccess(permission, elapsed);
+        }
+    }
+
+    private void openCircuit(Gw2CircuitBreaker circuitBreaker) {
+        for(int i = 0; i < 4; i++) {
+            call(circuitBreaker, true, FAST);
+        }
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testOpensOnFailures() {
+        var circuitBreaker = createCircuitBreaker(60);
+        call(circuitBreaker, true, FAST);
+        call(circuitBreaker, false, FAST);
+        call(circuitBreaker, true, FAST);
+        //not enough calls yet
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+        call(circuitBreaker, false, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(FAMILY));
+
+        var exception = assertThrows(Gw2ApiUnavailableException.class, () -> circuitBreaker.acquirePermission(FAMILY));
+        assertTrue(exception.getRetryAfter().getSeconds() > 0);
+        //other families are not affected
+        circuitBreaker.acquirePermission(Gw2EndpointFamily.WVW);
+    }
+
+    @Test
+    public void testWindowForgetsOldCalls() {
+        var circuitBreaker = createCircuitBreaker(60);
+        call(circuitBreaker, true, FAST);
+        for(int i = 0; i < 4; i++) {
+            call(circuitBreaker, false, FAST);
+        }
+        //the first failure is out of the window, so this is one failure in 4
+        call(circuitBreaker, true, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+        call(circuitBreaker, true, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testOpensOnSlowCalls() {
+        var circuitBreaker = createCircuitBreaker(60);
+        call(circuitBreaker, false, SLOW);
+        call(circuitBreaker, false, SLOW);
+        call(circuitBreaker, false, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+        call(circuitBreaker, false, SLOW);
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testSuccessfulProbeCloses() {
+        var circuitBreaker = createCircuitBreaker(0);
+        openCircuit(circuitBreaker);
+
+        var probe = circuitBreaker.acquirePermission(FAMILY);
+        assertTrue(probe.isProbe());
+        assertEquals(Gw2CircuitBreaker.CircuitState.HALF_OPEN, circuitBreaker.getState(FAMILY));
+        //a slow answer is still an answer
+        circuitBreaker.onSuccess(probe, SLOW);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+        //the window starts again
+        call(circuitBreaker, true, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testFailedProbeOpens() {
+        var circuitBreaker = createCircuitBreaker(0);
+        openCircuit(circuitBreaker);
+
+        var probe = circuitBreaker.acquirePermission(FAMILY);
+        circuitBreaker.onFailure(probe, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.OPEN, circuitBreaker.getState(FAMILY));
+        //next probe is let through
+        call(circuitBreaker, false, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testSingleProbe() {
+        var circuitBreaker = createCircuitBreaker(0);
+        openCircuit(circuitBreaker);
+
+        var probe = circuitBreaker.acquirePermission(FAMILY);
+        var exception = assertThrows(Gw2ApiUnavailableException.class, () -> circuitBreaker.acquirePermission(FAMILY));
+        assertEquals(Duration.ZERO, exception.getRetryAfter());
+
+        //a probe that was not sent gives back the permission
+        circuitBreaker.releasePermission(probe);
+        assertTrue(circuitBreaker.acquirePermission(FAMILY).isProbe());
+        assertEquals(Gw2CircuitBreaker.CircuitState.HALF_OPEN, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testLateResultDuringHalfOpen() {
+        var circuitBreaker = createCircuitBreaker(0);
+        //let through while closed, and still in flight when the circuit opens
+        var lateSuccess = circuitBreaker.acquirePermission(FAMILY);
+        var lateFailure = circuitBreaker.acquirePermission(FAMILY);
+        assertFalse(lateSuccess.isProbe());
+        openCircuit(circuitBreaker);
+
+        var probe = circuitBreaker.acquirePermission(FAMILY);
+        //the late results don't decide the half open state
+        circuitBreaker.onSuccess(lateSuccess, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.HALF_OPEN, circuitBreaker.getState(FAMILY));
+        circuitBreaker.onFailure(lateFailure, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.HALF_OPEN, circuitBreaker.getState(FAMILY));
+        //the probe is still the only one
+        assertThrows(Gw2ApiUnavailableException.class, () -> circuitBreaker.acquirePermission(FAMILY));
+
+        circuitBreaker.onSuccess(probe, FAST);
+        assertEquals(Gw2CircuitBreaker.CircuitState.CLOSED, circuitBreaker.getState(FAMILY));
+    }
+
+    @Test
+    public void testNonProbeReleaseDoesNotAdmitProbe() {
+        var circuitBreaker = createCircuitBreaker(0);
+        var rateLimited = circuitBreaker.acquirePermission(FAMILY);
+        openCircuit(circuitBreaker);
+
+        circuitBreaker.acquirePermission(FAMILY);
+        //a request of the closed state is rejected by the rate limiter, this must not end the probe
+        circuitBreaker.releasePermission(rateLimited);
+        assertThrows(Gw2ApiUnavailableException.class, () -> circuitBreaker.acquirePermission(FAMILY));
+    }
+
+    @Test
+    public void testSingleProbeConcurrently() throws InterruptedException {
+        var circuitBreaker = createCircuitBreaker(0);
+        openCircuit(circuitBreaker);
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        var start = new CountDownLatch(1);
+        var done = new CountDownLatch(threads);
+        var permitted = new AtomicInteger();
+        for(int i = 0; i < threads; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    circuitBreaker.acquirePermission(FAMILY);
+                    permitted.incrementAndGet();
+                } catch (Gw2ApiUnavailableException | InterruptedException ignored) {
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(1, permitted.get());
+    }
+}
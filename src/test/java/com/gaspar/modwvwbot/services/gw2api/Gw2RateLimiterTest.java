@@ -0,0 +1,125 @@
+package com.gaspar.modwvwbot.services.gw2api;
+
+import com.gaspar.modwvwbot.model.gw2api.Gw2RequestPriority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Gw2RateLimiterTest {
+
+    private Gw2RateLimiter rateLimiter;
+
+    /**
+     * Create a limiter with a full bucket. The refill is slow, so only the burst counts in the tests.
+     */
+    private Gw2RateLimiter createRateLimiter(double requestsPerSecond, int burst, int backgroundReserve) {
+        var limiter = new Gw2RateLimiter();
+        ReflectionTestUtils.setField(limiter, "requestsPerSecond", requestsPerSecond);
+        ReflectionTestUtils.setField(limiter, "burst", burst);
+        ReflectionTestUtils.setField(limiter, "backgroundReserve", backgroundReserve);
+        ReflectionTestUtils.setField(limiter, "interactiveMaxWaitMillis", 5000L);
+        ReflectionTestUtils.setField(limiter, "backgroundMaxWaitMillis", 5000L);
+        limiter.init();
+        return limiter;
+    }
+
+    @BeforeEach
+    public void setUp() {
+        rateLimiter = createRateLimiter(0.01, 5, 2);
+    }
+
+    @Test
+    public void testBackgroundReserve() {
+        //background can only take the tokens above the reserve
+        for(int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.acquire(Gw2RequestPriority.BACKGROUND, Duration.ZERO));
+        }
+        assertFalse(rateLimiter.acquire(Gw2RequestPriority.BACKGROUND, Duration.ZERO));
+        //the reserve is for interactive requests
+        assertTrue(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertTrue(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertFalse(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertEquals(2, rateLimiter.getUsage().getRejectedCount());
+    }
+
+    @Test
+    public void testHedgeNeverWaits() {
+        //hedges can't take the reserve either
+        for(int i = 0; i < 3; i++) {
+            assertTrue(rateLimiter.acquire(Gw2RequestPriority.HEDGE, Duration.ofSeconds(5)));
+        }
+        long start = System.nanoTime();
+        assertFalse(rateLimiter.acquire(Gw2RequestPriority.HEDGE, Duration.ofSeconds(5)));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "Hedge waited for a token.");
+        //not counted as rejected, the original request was sent
+        assertEquals(0, rateLimiter.getUsage().getRejectedCount());
+    }
+
+    @Test
+    public void testInteractiveServedBeforeBackground() throws Exception {
+        //10 tokens per second, empty bucket except the reserve
+        rateLimiter = createRateLimiter(10, 3, 1);
+        assertTrue(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertTrue(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertTrue(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+
+        List<Gw2RequestPriority> granted = new CopyOnWriteArrayList<>();
+        var background = CompletableFuture.runAsync(() -> {
+            if(rateLimiter.acquire(Gw2RequestPriority.BACKGROUND)) granted.add(Gw2RequestPriority.BACKGROUND);
+        });
+        //let the background request start waiting first
+        waitUntil(() -> rateLimiter.getUsage().getBackgroundWaiting() == 1);
+        var interactive = CompletableFuture.runAsync(() -> {
+            for(int i = 0; i < 3; i++) {
+                if(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE)) granted.add(Gw2RequestPriority.INTERACTIVE);
+            }
+        });
+        CompletableFuture.allOf(background, interactive).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(Gw2RequestPriority.INTERACTIVE, Gw2RequestPriority.INTERACTIVE,
+                Gw2RequestPriority.INTERACTIVE, Gw2RequestPriority.BACKGROUND), granted);
+    }
+
+    @Test
+    public void testEstimateWait() {
+        assertEquals(Duration.ZERO, rateLimiter.estimateWait(Gw2RequestPriority.INTERACTIVE));
+        assertEquals(Duration.ZERO, rateLimiter.estimateWait(Gw2RequestPriority.BACKGROUND));
+        for(int i = 0; i < 3; i++) {
+            rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO);
+        }
+        assertEquals(Duration.ZERO, rateLimiter.estimateWait(Gw2RequestPriority.INTERACTIVE));
+        assertFalse(rateLimiter.estimateWait(Gw2RequestPriority.BACKGROUND).isZero());
+        assertFalse(rateLimiter.estimateWait(Gw2RequestPriority.HEDGE).isZero());
+    }
+
+    @Test
+    public void testDrainGoesIntoDebt() {
+        rateLimiter = createRateLimiter(10, 4, 1);
+        rateLimiter.drain();
+        var usage = rateLimiter.getUsage();
+        assertEquals(1, usage.getThrottledCount());
+        //a full burst of debt, so it takes burst + 1 tokens (0.5 seconds) before anything can be sent
+        assertTrue(usage.getAvailableTokens() <= -3.9);
+        assertFalse(rateLimiter.acquire(Gw2RequestPriority.INTERACTIVE, Duration.ZERO));
+        assertTrue(rateLimiter.estimateWait(Gw2RequestPriority.INTERACTIVE).toMillis() >= 400);
+        //draining again does not forgive the existing debt
+        rateLimiter.drain();
+        assertTrue(rateLimiter.getUsage().getAvailableTokens() <= -7.8);
+    }
+
+    private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(!condition.getAsBoolean()) {
+            if(System.nanoTime() > end) fail("Condition was not met in time.");
+            Thread.sleep(5);
+        }
+    }
+}